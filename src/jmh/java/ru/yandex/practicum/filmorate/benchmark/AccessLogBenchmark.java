@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code GET /films} under the access-log modes: {@code trace} is the former configuration
+ * (every request and response body logged), {@code sampled} is the shipped one with a 10% sample and
+ * {@code off} disables Logbook entirely. Console output is discarded, so the numbers cover formatting and
+ * buffering but not terminal I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class AccessLogBenchmark {
+    @Param({"trace", "sampled", "off"})
+    private String mode;
+    @Param("1000")
+    private int films;
+    @Param("100")
+    private int pageSize;
+
+    private BenchmarkDatabase database;
+    private BenchmarkApplication application;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seed(films, films, films * 10, 5);
+
+        List<String> properties = switch (mode) {
+            case "trace" -> List.of(
+                    "--logbook.strategy=default",
+                    "--logbook.write.max-body-size=-1",
+                    "--filmorate.access-log.sample-rate=1.0");
+            case "sampled" -> List.of("--filmorate.access-log.sample-rate=0.1");
+            case "off" -> List.of("--logging.level.org.zalando.logbook=INFO");
+            default -> throw new IllegalArgumentException("Неизвестный режим: " + mode);
+        };
+        application = new BenchmarkApplication(database, properties);
+        client = HttpClient.newHttpClient();
+        request = HttpRequest.newBuilder(application.uri("/films?limit=" + pageSize))
+                .GET()
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+        database.close();
+    }
+
+    @Benchmark
+    public int getFilmsPage() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        return response.body().length;
+    }
+}
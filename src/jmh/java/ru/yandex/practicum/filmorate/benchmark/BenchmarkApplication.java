@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the whole application on a random port against a seeded {@link BenchmarkDatabase}.
+ * Console output is discarded while the application is up.
+ */
+public class BenchmarkApplication implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final PrintStream console;
+    private final String baseUrl;
+
+    public BenchmarkApplication(BenchmarkDatabase database, List<String> properties) {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.sql.init.mode=never",
+                "--spring.datasource.url=" + database.getJdbcUrl(),
+                "--spring.datasource.password="));
+        args.addAll(properties);
+        context = new SpringApplicationBuilder(FilmorateApplication.class).run(args.toArray(String[]::new));
+        baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    public URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        System.setOut(console);
+    }
+}
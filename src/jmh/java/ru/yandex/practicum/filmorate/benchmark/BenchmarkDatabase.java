@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+public class BenchmarkDatabase implements AutoCloseable {
+    public static final int WRITER_USERS = 1_000;
+    private static final int BATCH_SIZE = 10_000;
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbc;
+    private final Random random = new Random(42);
+
+    public BenchmarkDatabase() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        jdbc = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+        jdbc.update("DELETE FROM film_likes");
+        jdbc.update("DELETE FROM films");
+        jdbc.update("DELETE FROM users");
+    }
+
+    public String getJdbcUrl() {
+        return dataSource.getJdbcUrl();
+    }
+
+    public JdbcTemplate getJdbc() {
+        return jdbc;
+    }
+
+    /**
+     * Drops the composite keys and lookup indexes of the link tables, leaving only the single-column foreign
+     * key indexes, so the same workload can be measured without them.
+     */
+    public void dropPairIndexes() {
+        jdbc.execute("ALTER TABLE film_likes DROP CONSTRAINT film_likes_film_user_uq");
+        jdbc.execute("ALTER TABLE film_genres DROP CONSTRAINT film_genres_film_genre_uq");
+        jdbc.execute("ALTER TABLE friends DROP CONSTRAINT friends_user_friend_uq");
+        jdbc.execute("DROP INDEX film_likes_user_film_idx");
+        jdbc.execute("DROP INDEX friends_friend_user_idx");
+    }
+
+    public void seed(int films, int users, int likes, int friendsPerUser) {
+        batch("INSERT INTO films (id, name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?, ?)",
+                films, i -> new Object[]{i, "Film " + i, "Description of film " + i,
+                        Date.valueOf(LocalDate.of(1950 + i % 75, 1 + i % 12, 1 + i % 28)), 90 + i % 60,
+                        1 + i % 5});
+        batch("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)",
+                films, i -> new Object[]{i, 1 + i % 6});
+        batch("INSERT INTO users (id, login, email, name, birthday) VALUES (?, ?, ?, ?, ?)",
+                users + WRITER_USERS, i -> new Object[]{i, "user" + i, "user" + i + "@mail.ru", "User " + i,
+                        Date.valueOf(LocalDate.of(1960 + i % 45, 1 + i % 12, 1 + i % 28))});
+        batch("INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)",
+                uniquePairs(likes, films, users, true));
+        batch("INSERT INTO friends (user_id, friend_id) VALUES (?, ?)",
+                uniquePairs((long) users * friendsPerUser, users, users, false));
+        jdbc.execute("ALTER TABLE films ALTER COLUMN id RESTART WITH " + (films + 1));
+        jdbc.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (users + WRITER_USERS + 1));
+        jdbc.update("UPDATE films f SET like_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id)");
+        jdbc.execute("ANALYZE");
+    }
+
+    @Override
+    public void close() {
+        jdbc.execute("SHUTDOWN");
+        dataSource.close();
+    }
+
+    private List<Object[]> uniquePairs(long count, int leftSize, int rightSize, boolean skewLeft) {
+        long possible = (long) leftSize * rightSize;
+        long target = Math.min(count, possible / 2);
+        Set<Long> seen = new HashSet<>();
+        List<Object[]> pairs = new ArrayList<>();
+        while (pairs.size() < target) {
+            double r = random.nextDouble();
+            int left = 1 + (int) ((skewLeft ? r * r : r) * leftSize);
+            int right = 1 + random.nextInt(rightSize);
+            if (left != right || skewLeft) {
+                if (seen.add((long) left * (rightSize + 1) + right)) {
+                    pairs.add(new Object[]{left, right});
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private void batch(String sql, int count, IntFunction<Object[]> row) {
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            rows.add(row.apply(i));
+        }
+        batch(sql, rows);
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbc.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+}
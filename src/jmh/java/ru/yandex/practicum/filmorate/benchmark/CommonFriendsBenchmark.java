@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.user.CachedUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares common friends computed by the friends self-join with the in-memory intersection plus batch
+ * hydration, straight from the database and through the user cache. Users 1 and 2 are celebrities with {@code friends} friends each, half of them shared; user 3 is a
+ * regular user with 20 friends, half of them among the celebrity's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommonFriendsBenchmark {
+    private static final String COMMON_FRIENDS_SQL = "SELECT * FROM users u " +
+            "JOIN friends f1 ON u.id = f1.friend_id " +
+            "JOIN friends f2 ON u.id = f2.friend_id " +
+            "WHERE f1.user_id = ? AND f2.user_id = ?";
+    private static final long CELEBRITY = 1L;
+    private static final long OTHER_CELEBRITY = 2L;
+    private static final long REGULAR = 3L;
+    private static final int FIRST_FRIEND = 10;
+
+    @Param({"100", "10000", "50000"})
+    private int friends;
+    @Param("100000")
+    private int users;
+
+    private BenchmarkDatabase database;
+    private UserDbStorage userStorage;
+    private CachedUserStorage cachedUserStorage;
+    private FriendGraph friendGraph;
+    private final UserRowMapper userRowMapper = new UserRowMapper();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seed(1, users, 0, 10);
+        database.getJdbc().update("DELETE FROM friends WHERE user_id IN (?, ?, ?)", CELEBRITY, OTHER_CELEBRITY, REGULAR);
+        List<Object[]> edges = new ArrayList<>();
+        for (int i = 0; i < friends; i++) {
+            edges.add(new Object[]{CELEBRITY, FIRST_FRIEND + i});
+            edges.add(new Object[]{OTHER_CELEBRITY, FIRST_FRIEND + friends / 2 + i});
+        }
+        for (int i = 0; i < 20; i++) {
+            edges.add(new Object[]{REGULAR, i % 2 == 0 ? FIRST_FRIEND + i * (friends / 20) : users - i});
+        }
+        database.getJdbc().batchUpdate("INSERT INTO friends (user_id, friend_id) VALUES (?, ?)", edges);
+        database.getJdbc().execute("ANALYZE");
+        friendGraph = new FriendGraph(database.getJdbc());
+        userStorage = new UserDbStorage(database.getJdbc(), userRowMapper, friendGraph);
+        userStorage.init();
+        cachedUserStorage = new CachedUserStorage(userStorage, users, Duration.ofHours(1), friendGraph);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<User> sqlCelebrities() {
+        return database.getJdbc().query(COMMON_FRIENDS_SQL, userRowMapper, CELEBRITY, OTHER_CELEBRITY);
+    }
+
+    @Benchmark
+    public List<User> graphCelebrities() {
+        return userStorage.getCommonFriends(CELEBRITY, OTHER_CELEBRITY);
+    }
+
+    @Benchmark
+    public List<User> cachedGraphCelebrities() {
+        return cachedUserStorage.getCommonFriends(CELEBRITY, OTHER_CELEBRITY);
+    }
+
+    @Benchmark
+    public List<Long> graphCelebritiesIdsOnly() {
+        return friendGraph.getCommonFriends(CELEBRITY, OTHER_CELEBRITY);
+    }
+
+    @Benchmark
+    public List<User> sqlCelebrityAndRegular() {
+        return database.getJdbc().query(COMMON_FRIENDS_SQL, userRowMapper, CELEBRITY, REGULAR);
+    }
+
+    @Benchmark
+    public List<User> graphCelebrityAndRegular() {
+        return userStorage.getCommonFriends(CELEBRITY, REGULAR);
+    }
+
+    @Benchmark
+    public List<User> cachedGraphCelebrityAndRegular() {
+        return cachedUserStorage.getCommonFriends(CELEBRITY, REGULAR);
+    }
+
+    @Benchmark
+    public List<Long> graphCelebrityAndRegularIdsOnly() {
+        return friendGraph.getCommonFriends(CELEBRITY, REGULAR);
+    }
+}
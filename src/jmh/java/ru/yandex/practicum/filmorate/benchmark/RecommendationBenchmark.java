@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.storage.film.LikeMatrix;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recommendation latency and incremental update cost of {@link LikeMatrix} loaded straight from memory, without
+ * a database. Film popularity is skewed towards low ids. The heap retained by the matrix is printed after
+ * loading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class RecommendationBenchmark {
+    @Param("1000000")
+    private int users;
+    @Param("100000")
+    private int films;
+    @Param("20")
+    private int likesPerUser;
+    @Param("50")
+    private int neighbours;
+    @Param("5000")
+    private int maxLikersPerFilm;
+
+    private LikeMatrix likeMatrix;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long before = usedHeap();
+        Random random = new Random(42);
+        int count = users * likesPerUser;
+        int[] filmIds = new int[count];
+        int[] userIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            double r = random.nextDouble();
+            filmIds[i] = 1 + (int) (r * r * r * films);
+            userIds[i] = 1 + i / likesPerUser;
+        }
+        likeMatrix = new LikeMatrix(null, neighbours, maxLikersPerFilm);
+        likeMatrix.load(filmIds, userIds, count);
+        filmIds = null;
+        userIds = null;
+        System.out.printf("%nlike matrix: %d likes, ~%d MB retained%n", count, (usedHeap() - before) >> 20);
+    }
+
+    @Benchmark
+    public List<Long> recommend() {
+        return likeMatrix.recommend(randomUser(), 10);
+    }
+
+    @Benchmark
+    public void likeAndUnlike() {
+        long userId = randomUser();
+        long filmId = 1 + ThreadLocalRandom.current().nextInt(films);
+        likeMatrix.like(filmId, userId);
+        likeMatrix.unlike(filmId, userId);
+    }
+
+    private long randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
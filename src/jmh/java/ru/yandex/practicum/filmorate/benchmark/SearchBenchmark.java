@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency and incremental update cost of {@link FilmSearchIndex} loaded straight from memory, without a
+ * database. Titles and descriptions are drawn from a vocabulary with skewed word frequencies, and queries are
+ * drawn the same way, so frequent words produce long posting lists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+    private static final Set<FilmSearchField> TITLE = EnumSet.of(FilmSearchField.TITLE);
+    private static final Set<FilmSearchField> ALL_FIELDS = EnumSet.allOf(FilmSearchField.class);
+
+    @Param("100000")
+    private int films;
+    @Param("20000")
+    private int vocabulary;
+
+    private FilmSearchIndex searchIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Film> loaded = new ArrayList<>(films);
+        for (int i = 1; i <= films; i++) {
+            Film film = new Film();
+            film.setId((long) i);
+            film.setName(text(random, 2 + random.nextInt(3)));
+            film.setDescription(text(random, 15 + random.nextInt(10)));
+            loaded.add(film);
+        }
+        searchIndex = new FilmSearchIndex(null, new FilmLeaderboard(null), 0.05);
+        searchIndex.load(loaded);
+    }
+
+    @Benchmark
+    public List<Long> searchTitles() {
+        return searchIndex.search(text(ThreadLocalRandom.current(), 2), TITLE, 10);
+    }
+
+    @Benchmark
+    public List<Long> searchTitlesAndDescriptions() {
+        return searchIndex.search(text(ThreadLocalRandom.current(), 2), ALL_FIELDS, 10);
+    }
+
+    @Benchmark
+    public void reindexFilm() {
+        Film film = new Film();
+        film.setId(1L + ThreadLocalRandom.current().nextInt(films));
+        film.setName(text(ThreadLocalRandom.current(), 3));
+        film.setDescription(text(ThreadLocalRandom.current(), 20));
+        searchIndex.index(film);
+    }
+
+    private String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            double r = random.nextDouble();
+            text.append(word((int) (r * r * vocabulary))).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static String word(int index) {
+        StringBuilder word = new StringBuilder("k");
+        do {
+            word.append((char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return word.append("t").toString();
+    }
+}
@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    @Param("10000")
+    private int films;
+    @Param("10000")
+    private int users;
+    @Param("100000")
+    private int likes;
+    @Param("20")
+    private int friendsPerUser;
+    @Param({"true", "false"})
+    private boolean pairIndexes;
+
+    private BenchmarkDatabase database;
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        if (!pairIndexes) {
+            database.dropPairIndexes();
+        }
+        database.seed(films, users, likes, friendsPerUser);
+        FilmLeaderboard leaderboard = new FilmLeaderboard(database.getJdbc());
+        filmStorage = new FilmDbStorage(database.getJdbc(), new FilmRowMapper(), leaderboard,
+                new LikeMatrix(database.getJdbc(), 50, 5000),
+                new FilmSearchIndex(database.getJdbc(), leaderboard, 0.05));
+        filmStorage.init();
+        userStorage = new UserDbStorage(database.getJdbc(), new UserRowMapper(), new FriendGraph(database.getJdbc()));
+        userStorage.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Film> getTopFilms() {
+        return filmStorage.getTopFilms(100, null, null);
+    }
+
+    @Benchmark
+    public List<Film> searchFilms() {
+        return filmStorage.search("film " + randomId(films), EnumSet.of(FilmSearchField.TITLE), 10);
+    }
+
+    @Benchmark
+    public List<Film> findAllFilms() {
+        return filmStorage.findAll();
+    }
+
+    @Benchmark
+    public Optional<Film> findFilmById() {
+        return filmStorage.findById(randomId(films));
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        return userStorage.getFriends(randomId(users));
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return userStorage.getCommonFriends(randomId(users), randomId(users));
+    }
+
+    @Benchmark
+    public List<User> getFriendSuggestions() {
+        return userStorage.getFriendSuggestions(randomId(users), 10);
+    }
+
+    @Benchmark
+    public Optional<Film> likeAndUnlikeFilm() {
+        long filmId = randomId(films);
+        long userId = users + randomId(BenchmarkDatabase.WRITER_USERS);
+        filmStorage.likeAFilm(filmId, userId);
+        return filmStorage.unlikeAFilm(filmId, userId);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IMPORT_BATCH_SIZE)
+    public List<Film> createFilmBatch() {
+        List<Film> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        for (int i = 0; i < IMPORT_BATCH_SIZE; i++) {
+            Film film = new Film(null, "Imported " + i, "Imported film", LocalDate.of(2000, 1, 1), 90,
+                    new MPA(1L + i % 5, null));
+            film.getGenres().add(new Genre(1L + i % 6, null));
+            batch.add(film);
+        }
+        return filmStorage.createAll(batch);
+    }
+
+    private static long randomId(int bound) {
+        return 1 + ThreadLocalRandom.current().nextInt(bound);
+    }
+}
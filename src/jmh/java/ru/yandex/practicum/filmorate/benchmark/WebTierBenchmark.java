@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the web tier with platform and virtual request threads. Every client thread sends a mix of
+ * JDBC-bound reads; {@code SampleTime} reports p50/p99 latency and {@code Throughput} the request rate.
+ * Raise the client count with {@code -t} to go past the Tomcat thread limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(64)
+@Fork(1)
+public class WebTierBenchmark {
+    @Param({"platform", "virtual"})
+    private String threads;
+    @Param("10")
+    private int poolSize;
+    @Param("200")
+    private int tomcatThreads;
+    @Param("10000")
+    private int films;
+    @Param("10000")
+    private int users;
+
+    private BenchmarkDatabase database;
+    private BenchmarkApplication application;
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seed(films, users, films * 10, 20);
+        application = new BenchmarkApplication(database, List.of(
+                "--spring.threads.virtual.enabled=" + "virtual".equals(threads),
+                "--spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                "--spring.datasource.hikari.minimum-idle=" + poolSize,
+                "--server.tomcat.threads.max=" + tomcatThreads,
+                "--logging.level.org.zalando.logbook=INFO"));
+        client = HttpClient.newHttpClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        application.close();
+        database.close();
+    }
+
+    @Benchmark
+    public int mixedReads() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String path = switch (random.nextInt(3)) {
+            case 0 -> "/users/" + (1 + random.nextInt(users)) + "/friends/common/" + (1 + random.nextInt(users));
+            case 1 -> "/users/" + (1 + random.nextInt(users)) + "/friends";
+            default -> "/films?after=" + random.nextInt(films) + "&limit=20";
+        };
+        HttpRequest request = HttpRequest.newBuilder(application.uri(path)).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray()).body().length;
+    }
+}
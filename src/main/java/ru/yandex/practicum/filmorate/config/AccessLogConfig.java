@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.core.Conditions;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Decides which requests reach the Logbook access log: streamed NDJSON exports are never logged,
+ * the rest is sampled at {@code filmorate.access-log.sample-rate}. Paths from {@code logbook.predicate.exclude}
+ * are applied by Logbook on top of this condition.
+ */
+@Configuration
+public class AccessLogConfig {
+
+    @Bean
+    public Predicate<HttpRequest> requestCondition(
+            @Value("${filmorate.access-log.sample-rate:0.1}") double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("filmorate.access-log.sample-rate должен быть в диапазоне [0, 1]");
+        }
+        Predicate<HttpRequest> notStreamed = Conditions.exclude(
+                Conditions.header("Accept", accept -> accept.contains(MediaType.APPLICATION_NDJSON_VALUE)));
+        return notStreamed.and(request -> sampled(sampleRate));
+    }
+
+    private static boolean sampled(double sampleRate) {
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
@@ -1,14 +1,25 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeBatchSummary;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeSummary;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping("/films")
@@ -16,10 +27,21 @@ import java.util.Collection;
 @Validated
 public class FilmController {
     private final FilmService filmService;
+    private final NdjsonWriter ndjsonWriter;
+    private final NdjsonReader ndjsonReader;
 
     @GetMapping
-    public Collection<Film> findAll() {
-        return filmService.findAll();
+    public Collection<Film> findAll(@RequestParam(required = false) @PositiveOrZero Long after,
+                                    @RequestParam(required = false) @Positive @Max(1000) Integer limit) {
+        if (after == null && limit == null) {
+            return filmService.findAll();
+        }
+        return filmService.findPage(after, limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamAll() {
+        return ndjsonWriter.write(filmService::streamAll);
     }
 
     @PostMapping
@@ -27,6 +49,16 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    @PostMapping("/batch")
+    public List<BatchItemResult> createAll(@RequestBody List<Film> films) {
+        return filmService.importAll(films);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<BatchItemResult> importAll(InputStream body) throws IOException {
+        return ndjsonReader.read(body, Film.class, FilmService.BATCH_CHUNK_SIZE, filmService::importAll);
+    }
+
     @PutMapping
     public Film update(@RequestBody Film film) {
         return filmService.update(film);
@@ -52,8 +84,32 @@ public class FilmController {
         return filmService.unlikeAFilm(id, userId);
     }
 
+    @PutMapping(value = "/{id}/like/{userId}", params = "compact=true")
+    public LikeSummary saveLike(@PathVariable @Positive Long id, @PathVariable @Positive Long userId) {
+        return filmService.saveLike(id, userId);
+    }
+
+    @DeleteMapping(value = "/{id}/like/{userId}", params = "compact=true")
+    public LikeSummary removeLike(@PathVariable @Positive Long id, @PathVariable @Positive Long userId) {
+        return filmService.removeLike(id, userId);
+    }
+
+    @PostMapping("/likes/batch")
+    public LikeBatchSummary applyLikes(@RequestBody List<LikeEvent> events) {
+        return filmService.applyLikes(events);
+    }
+
     @GetMapping("/popular")
-    public Collection<Film> getTopFilms(@RequestParam(defaultValue = "10") @Positive int count) {
-        return filmService.getTopFilms(count);
+    public Collection<Film> getTopFilms(@RequestParam(defaultValue = "10") @Positive int count,
+                                        @RequestParam(required = false) @Positive Long genreId,
+                                        @RequestParam(required = false) @Positive Integer year) {
+        return filmService.getTopFilms(count, genreId, year);
+    }
+
+    @GetMapping("/search")
+    public List<Film> search(@RequestParam String query,
+                             @RequestParam(defaultValue = "title") List<String> by,
+                             @RequestParam(defaultValue = "10") @Positive @Max(100) int count) {
+        return filmService.search(query, by, count);
     }
 }
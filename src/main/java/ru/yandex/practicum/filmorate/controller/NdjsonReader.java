@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reads one JSON object per line. A line that cannot be parsed gets its own error result, parsed items are
+ * handed to {@code chunkImporter} in chunks; validating them is up to the importer. Results are indexed by the item's position among
+ * non-blank lines, as in the JSON batch endpoints.
+ */
+@Component
+@RequiredArgsConstructor
+public class NdjsonReader {
+    private final ObjectMapper objectMapper;
+
+    public <T> List<BatchItemResult> read(InputStream in, Class<T> type, int chunkSize,
+                                          Function<List<T>, List<BatchItemResult>> chunkImporter)
+            throws IOException {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            int index = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    chunk.add(objectMapper.readValue(line, type));
+                    chunkIndexes.add(index);
+                } catch (JsonProcessingException e) {
+                    results.add(new BatchItemResult(index, null, "Некорректный JSON: " + e.getOriginalMessage()));
+                }
+                index++;
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, chunkIndexes, chunkImporter, results);
+                    chunk = new ArrayList<>(chunkSize);
+                    chunkIndexes = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, chunkIndexes, chunkImporter, results);
+        }
+        results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        return results;
+    }
+
+    private <T> void importChunk(List<T> chunk, List<Integer> chunkIndexes,
+                                 Function<List<T>, List<BatchItemResult>> chunkImporter,
+                                 List<BatchItemResult> results) {
+        List<BatchItemResult> imported = chunkImporter.apply(chunk);
+        for (BatchItemResult result : imported) {
+            result.setIndex(chunkIndexes.get(result.getIndex()));
+            results.add(result);
+        }
+    }
+}
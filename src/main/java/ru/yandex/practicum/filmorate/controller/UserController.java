@@ -1,14 +1,24 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendshipEdge;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/users")
@@ -16,10 +26,21 @@ import java.util.List;
 @Validated
 public class UserController {
     private final UserService userService;
+    private final FilmService filmService;
+    private final NdjsonWriter ndjsonWriter;
 
     @GetMapping
-    public List<User> findAll() {
-        return userService.findAll();
+    public List<User> findAll(@RequestParam(required = false) @PositiveOrZero Long after,
+                              @RequestParam(required = false) @Positive @Max(1000) Integer limit) {
+        if (after == null && limit == null) {
+            return userService.findAll();
+        }
+        return userService.findPage(after, limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamAll() {
+        return ndjsonWriter.write(userService::streamAll);
     }
 
     @PostMapping
@@ -27,14 +48,20 @@ public class UserController {
         return userService.create(user);
     }
 
+    @PostMapping("/batch")
+    public List<BatchItemResult> createAll(@RequestBody List<User> users) {
+        return userService.createAll(users);
+    }
+
     @PutMapping
     public User update(@RequestBody User user) {
         return userService.update(user);
     }
 
     @GetMapping("/{id}")
-    public User findById(@PathVariable @Positive Long id) {
-        return userService.findById(id);
+    public User findById(@PathVariable @Positive Long id,
+                         @RequestParam(defaultValue = "") Set<String> expand) {
+        return userService.findById(id, expand);
     }
 
     @PutMapping("/{id}/friends/{friendId}")
@@ -47,6 +74,28 @@ public class UserController {
         return userService.deleteFriend(id, friendId);
     }
 
+    @PutMapping(value = "/{id}/friends/{friendId}", params = "compact=true")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void saveFriend(@PathVariable @Positive Long id, @PathVariable @Positive Long friendId) {
+        userService.saveFriend(id, friendId);
+    }
+
+    @DeleteMapping(value = "/{id}/friends/{friendId}", params = "compact=true")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void removeFriend(@PathVariable @Positive Long id, @PathVariable @Positive Long friendId) {
+        userService.removeFriend(id, friendId);
+    }
+
+    @PutMapping("/friends/batch")
+    public List<BatchItemResult> addFriends(@RequestBody List<FriendshipEdge> edges) {
+        return userService.addFriends(edges);
+    }
+
+    @DeleteMapping("/friends/batch")
+    public List<BatchItemResult> deleteFriends(@RequestBody List<FriendshipEdge> edges) {
+        return userService.deleteFriends(edges);
+    }
+
     @GetMapping("/{id}/friends")
     public List<User> getAllFriends(@PathVariable @Positive Long id) {
         return userService.getAllFriends(id);
@@ -56,4 +105,16 @@ public class UserController {
     public List<User> getCommonFriends(@PathVariable @Positive Long id, @PathVariable @Positive Long otherId) {
         return userService.getCommonFriends(id, otherId);
     }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable @Positive Long id,
+                                           @RequestParam(defaultValue = "10") @Positive @Max(100) int limit) {
+        return userService.getFriendSuggestions(id, limit);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable @Positive Long id,
+                                         @RequestParam(defaultValue = "10") @Positive @Max(100) int count) {
+        return filmService.getRecommendations(id, count);
+    }
 }
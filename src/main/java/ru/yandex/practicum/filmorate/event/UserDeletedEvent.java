@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class UserDeletedEvent {
+    private final Long userId;
+    private final List<Long> likedFilmIds;
+}
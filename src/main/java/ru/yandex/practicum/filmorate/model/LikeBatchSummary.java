@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class LikeBatchSummary {
+    private int received;
+    private int duplicates;
+    private int liked;
+    private int unliked;
+    private int unchanged;
+    private final List<BatchItemResult> errors = new ArrayList<>();
+}
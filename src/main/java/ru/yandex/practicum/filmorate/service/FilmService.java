@@ -1,53 +1,101 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.MPA;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
+import ru.yandex.practicum.filmorate.model.LikeBatchSummary;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeSummary;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceCache;
 
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class FilmService {
+    public static final int BATCH_CHUNK_SIZE = 1000;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String SAVE_FAILED = "Не удалось сохранить данные";
+    private static final LocalDate EARLIEST_RELEASE_DATE = LocalDate.of(1895, Month.DECEMBER, 28);
+
     private final FilmStorage filmStorage;
     private final UserService userService;
+    private final ReferenceCache referenceCache;
+    private final LikeWriteBehind likeWriteBehind;
+    private final Validator validator;
 
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       UserService userService) {
+    public FilmService(@Qualifier("cachedFilmStorage") FilmStorage filmStorage,
+                       UserService userService,
+                       ReferenceCache referenceCache,
+                       LikeWriteBehind likeWriteBehind,
+                       Validator validator) {
         this.filmStorage = filmStorage;
         this.userService = userService;
+        this.referenceCache = referenceCache;
+        this.likeWriteBehind = likeWriteBehind;
+        this.validator = validator;
     }
 
     public Film create(Film film) {
-        if ((film.getReleaseDate() != null) && (film.getReleaseDate().isBefore(LocalDate.of(1895, Month.DECEMBER,
-                28)))) {
-            log.error("film release date = {}", film.getReleaseDate());
-            throw new ValidationException("Дата релиза не может быть раньше 28 декабря 1895 года.");
-        }
-        if (film.getMpa() != null) {
-            Optional<MPA> mpa = filmStorage.findMPAById(film.getMpa().getId());
-            if (mpa.isEmpty()) {
-                log.error("no MPA rating with id = {}", film.getMpa().getId());
-                throw new NotFoundException("Рейтинг с id = " + film.getMpa().getId() + " не найден.");
+        validate(film);
+        return filmStorage.create(film);
+    }
+
+    /**
+     * Creates the films that pass validation and reports every film separately, like
+     * {@link UserService#createAll}: an invalid film or a failed chunk does not stop the others. Serves both
+     * the JSON and the NDJSON body of {@code POST /films/batch}.
+     */
+    public List<BatchItemResult> importAll(List<Film> films) {
+        List<BatchItemResult> results = new ArrayList<>(films.size());
+        List<Film> accepted = new ArrayList<>();
+        List<BatchItemResult> acceptedResults = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            BatchItemResult result = new BatchItemResult(i, null, findImportError(films.get(i)));
+            results.add(result);
+            if (result.getError() == null) {
+                accepted.add(films.get(i));
+                acceptedResults.add(result);
             }
         }
-        if (!film.getGenres().isEmpty()) {
-            List<Long> unknownGenres = filmStorage.findUnknownFilmGenres(film.getGenres());
-            if (!unknownGenres.isEmpty()) {
-                log.error("no genres with id = {}", unknownGenres);
-                throw new NotFoundException("Жанры с id = " + unknownGenres + " не найдены.");
+        for (int from = 0; from < accepted.size(); from += BATCH_CHUNK_SIZE) {
+            int to = Math.min(from + BATCH_CHUNK_SIZE, accepted.size());
+            List<BatchItemResult> chunkResults = acceptedResults.subList(from, to);
+            try {
+                List<Film> created = filmStorage.createAll(accepted.subList(from, to));
+                for (int i = 0; i < created.size(); i++) {
+                    chunkResults.get(i).setId(created.get(i).getId());
+                }
+            } catch (DataAccessException e) {
+                log.warn("failed to import films {}..{}: {}", from, to - 1, e.getMessage());
+                chunkResults.forEach(result -> result.setError(SAVE_FAILED));
             }
         }
-        return filmStorage.create(film);
+        log.debug("imported {} of {} films", accepted.size(), films.size());
+        return results;
     }
 
     public Film update(Film film) {
@@ -55,26 +103,8 @@ public class FilmService {
             log.error("no film id");
             throw new ValidationException("Id должен быть указан.");
         }
-        if (filmStorage.findById(film.getId()).isPresent()) {
-            if ((film.getReleaseDate() != null) && (film.getReleaseDate().isBefore(LocalDate.of(1895, Month.DECEMBER,
-                    28)))) {
-                log.error("film release date = {}", film.getReleaseDate());
-                throw new ValidationException("Дата релиза не может быть раньше 28 декабря 1895 года.");
-            }
-            if (film.getMpa() != null) {
-                Optional<MPA> mpa = filmStorage.findMPAById(film.getMpa().getId());
-                if (mpa.isEmpty()) {
-                    log.error("no MPA rating with id = {}", film.getMpa().getId());
-                    throw new NotFoundException("Рейтинг с id = " + film.getMpa().getId() + " не найден.");
-                }
-            }
-            if (!film.getGenres().isEmpty()) {
-                List<Long> unknownGenres = filmStorage.findUnknownFilmGenres(film.getGenres());
-                if (!unknownGenres.isEmpty()) {
-                    log.error("no genres with id = {}", unknownGenres);
-                    throw new NotFoundException("Жанры с id = " + unknownGenres + " не найдены.");
-                }
-            }
+        if (filmStorage.existsById(film.getId())) {
+            validate(film);
             return filmStorage.update(film);
         }
         log.error("no film with id = {}", film.getId());
@@ -84,7 +114,21 @@ public class FilmService {
     public List<Film> findAll() {
         List<Film> fullList = filmStorage.findAll();
         log.debug("the size of films map = {}", fullList);
-        return fullList;
+        return withPendingLikes(fullList);
+    }
+
+    public List<Film> findPage(Long afterId, Integer limit) {
+        log.debug("films page after id = {}, limit = {}", afterId, limit);
+        return withPendingLikes(filmStorage.findPage(afterId != null ? afterId : 0L,
+                limit != null ? limit : DEFAULT_PAGE_SIZE));
+    }
+
+    public void streamAll(Consumer<Film> consumer) {
+        if (!likeWriteBehind.isEnabled()) {
+            filmStorage.streamAll(consumer);
+            return;
+        }
+        filmStorage.streamAll(film -> consumer.accept(likeWriteBehind.overlay(film)));
     }
 
     public Film findById(Long filmId) {
@@ -93,39 +137,198 @@ public class FilmService {
             log.error("no film with id = {}", filmId);
             throw new NotFoundException("Фильм с id = " + filmId + " не найден.");
         }
-        return film.get();
+        return likeWriteBehind.overlay(film.get());
     }
 
     public Film delete(Long filmId) {
-        if (filmStorage.findById(filmId).isEmpty()) {
-            log.error("no film with id = {}", filmId);
-            throw new NotFoundException("Фильм с id = " + filmId + " не найден.");
-        }
+        checkExists(filmId);
         return filmStorage.delete(filmId);
     }
 
     public Film likeAFilm(Long filmId, Long userId) {
-        Optional<Film> film = filmStorage.findById(filmId);
-        if (film.isEmpty()) {
-            log.error("no film with id = {}", filmId);
-            throw new NotFoundException("Фильм с id = " + filmId + " не найден.");
+        checkExists(filmId);
+        userService.checkExists(userId);
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.submit(filmId, userId, LikeOperation.LIKE);
+            return findById(filmId);
         }
-        User user = userService.findById(userId);
         return filmStorage.likeAFilm(filmId, userId).get();
     }
 
     public Film unlikeAFilm(Long filmId, Long userId) {
-        Optional<Film> film = filmStorage.findById(filmId);
-        if (film.isEmpty()) {
+        checkExists(filmId);
+        userService.checkExists(userId);
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.submit(filmId, userId, LikeOperation.UNLIKE);
+            return findById(filmId);
+        }
+        return filmStorage.unlikeAFilm(filmId, userId).get();
+    }
+
+    public LikeSummary saveLike(Long filmId, Long userId) {
+        checkExists(filmId);
+        userService.checkExists(userId);
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.submit(filmId, userId, LikeOperation.LIKE);
+            return new LikeSummary(filmId, userId, findById(filmId).getLikes().size());
+        }
+        return new LikeSummary(filmId, userId, filmStorage.saveLike(filmId, userId));
+    }
+
+    public LikeSummary removeLike(Long filmId, Long userId) {
+        checkExists(filmId);
+        userService.checkExists(userId);
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.submit(filmId, userId, LikeOperation.UNLIKE);
+            return new LikeSummary(filmId, userId, findById(filmId).getLikes().size());
+        }
+        return new LikeSummary(filmId, userId, filmStorage.removeLike(filmId, userId));
+    }
+
+    /**
+     * Applies the events straight to the storage. Operations buffered by {@link LikeWriteBehind} are written
+     * first, so an older buffered like or unlike cannot overwrite a newer batch event.
+     */
+    public LikeBatchSummary applyLikes(List<LikeEvent> events) {
+        LikeBatchSummary summary = new LikeBatchSummary();
+        summary.setReceived(events.size());
+        Map<LikeKey, Integer> lastEventByKey = new LinkedHashMap<>();
+        int valid = 0;
+        for (int i = 0; i < events.size(); i++) {
+            LikeEvent event = events.get(i);
+            if (event.getFilmId() == null || event.getUserId() == null || event.getOp() == null) {
+                summary.getErrors().add(new BatchItemResult(i, null, "Должны быть указаны filmId, userId и op."));
+            } else {
+                lastEventByKey.put(new LikeKey(event.getFilmId(), event.getUserId()), i);
+                valid++;
+            }
+        }
+        summary.setDuplicates(valid - lastEventByKey.size());
+
+        Set<Long> existingFilms = lastEventByKey.isEmpty() ? Set.of() : filmStorage.findExistingIds(
+                lastEventByKey.keySet().stream().map(LikeKey::filmId).collect(Collectors.toSet()));
+        Set<Long> existingUsers = userService.findExistingIds(
+                lastEventByKey.keySet().stream().map(LikeKey::userId).collect(Collectors.toSet()));
+        List<Integer> accepted = new ArrayList<>();
+        for (Map.Entry<LikeKey, Integer> entry : lastEventByKey.entrySet()) {
+            if (!existingFilms.contains(entry.getKey().filmId())) {
+                summary.getErrors().add(new BatchItemResult(entry.getValue(), null,
+                        "Фильм с id = " + entry.getKey().filmId() + " не найден."));
+            } else if (!existingUsers.contains(entry.getKey().userId())) {
+                summary.getErrors().add(new BatchItemResult(entry.getValue(), null,
+                        "Пользователь с id = " + entry.getKey().userId() + " не найден."));
+            } else {
+                accepted.add(entry.getValue());
+            }
+        }
+
+        if (likeWriteBehind.isEnabled() && !accepted.isEmpty()) {
+            likeWriteBehind.flush();
+        }
+        for (int from = 0; from < accepted.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = accepted.subList(from, Math.min(from + BATCH_CHUNK_SIZE, accepted.size()));
+            List<LikeEvent> chunkEvents = chunk.stream().map(events::get).toList();
+            try {
+                boolean[] changed = filmStorage.applyLikes(chunkEvents);
+                for (int i = 0; i < changed.length; i++) {
+                    if (!changed[i]) {
+                        summary.setUnchanged(summary.getUnchanged() + 1);
+                    } else if (chunkEvents.get(i).getOp() == LikeOperation.LIKE) {
+                        summary.setLiked(summary.getLiked() + 1);
+                    } else {
+                        summary.setUnliked(summary.getUnliked() + 1);
+                    }
+                }
+            } catch (DataAccessException e) {
+                log.warn("failed to apply like events: {}", e.getMessage());
+                chunk.forEach(index -> summary.getErrors().add(
+                        new BatchItemResult(index, null, SAVE_FAILED)));
+            }
+        }
+        summary.getErrors().sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        log.debug("like events received = {}, liked = {}, unliked = {}", summary.getReceived(), summary.getLiked(),
+                summary.getUnliked());
+        return summary;
+    }
+
+    public List<Film> getTopFilms(int count, Long genreId, Integer year) {
+        log.debug("count = {}, genreId = {}, year = {}", count, genreId, year);
+        return withPendingLikes(filmStorage.getTopFilms(count, genreId, year));
+    }
+
+    public List<Film> getRecommendations(Long userId, int count) {
+        userService.checkExists(userId);
+        return withPendingLikes(filmStorage.getRecommendations(userId, count));
+    }
+
+    public List<Film> search(String query, List<String> by, int count) {
+        Set<FilmSearchField> fields = EnumSet.noneOf(FilmSearchField.class);
+        for (String field : by) {
+            try {
+                fields.add(FilmSearchField.valueOf(field.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                log.error("unknown search field = {}", field);
+                throw new ValidationException("Поиск возможен только по полям title и description.");
+            }
+        }
+        log.debug("query = {}, fields = {}, count = {}", query, fields, count);
+        return withPendingLikes(filmStorage.search(query, fields, count));
+    }
+
+    /**
+     * Adds likes still buffered by {@link LikeWriteBehind} to the returned films. Which films are returned and
+     * in what order is decided from written likes only, so it catches up within one flush interval.
+     */
+    private List<Film> withPendingLikes(List<Film> films) {
+        if (!likeWriteBehind.isEnabled()) {
+            return films;
+        }
+        return films.stream().map(likeWriteBehind::overlay).toList();
+    }
+
+    private void validate(Film film) {
+        Optional<RuntimeException> error = findValidationError(film);
+        if (error.isPresent()) {
+            log.error("invalid film: {}", error.get().getMessage());
+            throw error.get();
+        }
+    }
+
+    /**
+     * Checks the release date, rating and genres of a film and returns the exception the single-film
+     * endpoints throw: {@link ValidationException} for a bad value, {@link NotFoundException} for an unknown
+     * reference. Batch imports report its message per film instead.
+     */
+    private Optional<RuntimeException> findValidationError(Film film) {
+        if (film.getReleaseDate() != null && film.getReleaseDate().isBefore(EARLIEST_RELEASE_DATE)) {
+            return Optional.of(new ValidationException("Дата релиза не может быть раньше 28 декабря 1895 года."));
+        }
+        if (film.getMpa() != null && referenceCache.findMpaById(film.getMpa().getId()).isEmpty()) {
+            return Optional.of(new NotFoundException("Рейтинг с id = " + film.getMpa().getId() + " не найден."));
+        }
+        List<Long> unknownGenres = referenceCache.findUnknownGenres(film.getGenres());
+        if (!unknownGenres.isEmpty()) {
+            return Optional.of(new NotFoundException("Жанры с id = " + unknownGenres + " не найдены."));
+        }
+        return Optional.empty();
+    }
+
+    private String findImportError(Film film) {
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<Film> violation = violations.iterator().next();
+            return violation.getPropertyPath() + " " + violation.getMessage();
+        }
+        return findValidationError(film).map(RuntimeException::getMessage).orElse(null);
+    }
+
+    private void checkExists(Long filmId) {
+        if (!filmStorage.existsById(filmId)) {
             log.error("no film with id = {}", filmId);
             throw new NotFoundException("Фильм с id = " + filmId + " не найден.");
         }
-        User user = userService.findById(userId);
-        return filmStorage.unlikeAFilm(filmId, userId).get();
     }
 
-    public List<Film> getTopFilms(int count) {
-        log.debug("count = {}", count);
-        return filmStorage.getTopFilms(count);
+    private record LikeKey(long filmId, long userId) {
     }
 }
@@ -5,7 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.storage.film.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceCache;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,16 +14,16 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Slf4j
 public class GenreService {
-    private final GenreStorage genreStorage;
+    private final ReferenceCache referenceCache;
 
     public List<Genre> findAll() {
-        List<Genre> fullList = genreStorage.findAll();
+        List<Genre> fullList = referenceCache.getGenres();
         log.debug("the size of genre map = {}", fullList);
         return fullList;
     }
 
     public Genre findById(Long genreId) {
-        Optional<Genre> genre = genreStorage.findById(genreId);
+        Optional<Genre> genre = referenceCache.findGenreById(genreId);
         if (genre.isEmpty()) {
             log.warn("no genre with id = {}", genreId);
             throw new NotFoundException("Жанр с id = " + genreId + " не найден.");
@@ -5,7 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.MPA;
-import ru.yandex.practicum.filmorate.storage.film.MPAStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceCache;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,16 +14,16 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Slf4j
 public class MPAService {
-    private final MPAStorage mpaStorage;
+    private final ReferenceCache referenceCache;
 
     public List<MPA> findAll() {
-        List<MPA> fullList = mpaStorage.findAll();
+        List<MPA> fullList = referenceCache.getMpa();
         log.debug("the size of MPA map = {}", fullList);
         return fullList;
     }
 
     public MPA findById(Long mpaId) {
-        Optional<MPA> mpa = mpaStorage.findById(mpaId);
+        Optional<MPA> mpa = referenceCache.findMpaById(mpaId);
         if (mpa.isEmpty()) {
             log.warn("no MPA with id = {}", mpaId);
             throw new NotFoundException("Рейтинг с id = " + mpaId + " не найден.");
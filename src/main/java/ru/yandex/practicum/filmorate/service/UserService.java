@@ -1,24 +1,49 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.event.UserDeletedEvent;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendshipEdge;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserExpansion;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class UserService {
+    public static final int BATCH_CHUNK_SIZE = 1000;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String SAVE_FAILED = "Не удалось сохранить данные";
+
     private final UserStorage userStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Validator validator;
 
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(@Qualifier("cachedUserStorage") UserStorage userStorage,
+                       ApplicationEventPublisher eventPublisher,
+                       Validator validator) {
         this.userStorage = userStorage;
+        this.eventPublisher = eventPublisher;
+        this.validator = validator;
     }
 
     public User create(User user) {
@@ -37,12 +62,45 @@ public class UserService {
         return userStorage.create(user);
     }
 
+    public List<BatchItemResult> createAll(List<User> users) {
+        List<BatchItemResult> results = new ArrayList<>(users.size());
+        List<User> accepted = new ArrayList<>();
+        List<BatchItemResult> acceptedResults = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            BatchItemResult result = new BatchItemResult(i, null, findValidationError(user));
+            results.add(result);
+            if (result.getError() == null) {
+                if (user.getName() == null || user.getName().isBlank()) {
+                    user.setName(user.getLogin());
+                }
+                accepted.add(user);
+                acceptedResults.add(result);
+            }
+        }
+        for (int from = 0; from < accepted.size(); from += BATCH_CHUNK_SIZE) {
+            int to = Math.min(from + BATCH_CHUNK_SIZE, accepted.size());
+            List<BatchItemResult> chunkResults = acceptedResults.subList(from, to);
+            try {
+                List<User> created = userStorage.createAll(accepted.subList(from, to));
+                for (int i = 0; i < created.size(); i++) {
+                    chunkResults.get(i).setId(created.get(i).getId());
+                }
+            } catch (DataAccessException e) {
+                log.warn("failed to import users {}..{}: {}", from, to - 1, e.getMessage());
+                chunkResults.forEach(result -> result.setError(SAVE_FAILED));
+            }
+        }
+        log.debug("imported {} of {} users", accepted.size(), users.size());
+        return results;
+    }
+
     public User update(User user) {
         if (user.getId() == null) {
             log.warn("no user id");
             throw new ValidationException("Id должен быть указан.");
         }
-        if (userStorage.findById(user.getId()).isPresent()) {
+        if (userStorage.existsById(user.getId())) {
             if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
                 log.warn("user email = {}", user.getEmail());
                 throw new ValidationException("Электронная почта не может быть пустой и должна содержать символ @.");
@@ -59,8 +117,21 @@ public class UserService {
         return fullList;
     }
 
+    public List<User> findPage(Long afterId, Integer limit) {
+        log.debug("users page after id = {}, limit = {}", afterId, limit);
+        return userStorage.findPage(afterId != null ? afterId : 0L, limit != null ? limit : DEFAULT_PAGE_SIZE);
+    }
+
+    public void streamAll(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
     public User findById(Long userId) {
-        Optional<User> user = userStorage.findById(userId);
+        return findById(userId, Set.of());
+    }
+
+    public User findById(Long userId, Set<String> expand) {
+        Optional<User> user = userStorage.findById(userId, parseExpansions(expand));
         if (user.isEmpty()) {
             log.warn("no user with id = {}", userId);
             throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
@@ -69,57 +140,143 @@ public class UserService {
     }
 
     public User delete(Long userId) {
-        if (userStorage.findById(userId).isEmpty()) {
-            log.warn("no user with id = {}", userId);
-            throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
-        }
-        return userStorage.delete(userId);
+        checkExists(userId);
+        User user = userStorage.delete(userId);
+        List<Long> likedFilmIds = user.getFavorites().stream()
+                .map(Film::getId)
+                .toList();
+        eventPublisher.publishEvent(new UserDeletedEvent(userId, likedFilmIds));
+        return user;
     }
 
     public User addFriend(Long userId, Long friendId) {
-        if (userStorage.findById(userId).isEmpty()) {
-            log.warn("no user with id = {}", userId);
-            throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
-        }
-        if (userStorage.findById(friendId).isEmpty()) {
-            log.warn("no user with id = {}", friendId);
-            throw new NotFoundException("Пользователь с id = " + friendId + " не найден.");
-        }
+        checkExists(userId, friendId);
         return userStorage.addFriend(userId, friendId);
     }
 
     public User deleteFriend(Long userId, Long friendId) {
-        if (userStorage.findById(userId).isEmpty()) {
-            log.warn("no user with id = {}", userId);
-            throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
-        }
-        if (userStorage.findById(friendId).isEmpty()) {
-            log.warn("no user with id = {}", friendId);
-            throw new NotFoundException("Пользователь с id = " + friendId + " не найден.");
-        }
+        checkExists(userId, friendId);
         return userStorage.deleteFriend(userId, friendId);
     }
 
+    public void saveFriend(Long userId, Long friendId) {
+        checkExists(userId, friendId);
+        userStorage.saveFriend(userId, friendId);
+    }
+
+    public void removeFriend(Long userId, Long friendId) {
+        checkExists(userId, friendId);
+        userStorage.removeFriend(userId, friendId);
+    }
+
+    public List<BatchItemResult> addFriends(List<FriendshipEdge> edges) {
+        return applyFriendships(edges, userStorage::addFriends);
+    }
+
+    public List<BatchItemResult> deleteFriends(List<FriendshipEdge> edges) {
+        return applyFriendships(edges, userStorage::deleteFriends);
+    }
+
     public List<User> getAllFriends(Long userId) {
-        if (userStorage.findById(userId).isEmpty()) {
-            log.warn("no user with id = {}", userId);
-            throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
-        }
-        return userStorage.getFriends(userStorage.findById(userId).get());
+        checkExists(userId);
+        return userStorage.getFriends(userId);
     }
 
     public List<User> getCommonFriends(Long userId1, Long userId2) {
-        Optional<User> optionalUser1 = userStorage.findById(userId1);
-        if (optionalUser1.isEmpty()) {
-            log.warn("no user with id = {}", userId1);
-            throw new NotFoundException("Пользователь с id = " + userId1 + " не найден.");
+        checkExists(userId1, userId2);
+        return userStorage.getCommonFriends(userId1, userId2);
+    }
+
+    public List<User> getFriendSuggestions(Long userId, int limit) {
+        checkExists(userId);
+        return userStorage.getFriendSuggestions(userId, limit);
+    }
+
+    public Set<Long> findExistingIds(Collection<Long> userIds) {
+        return userIds.isEmpty() ? Set.of() : userStorage.findExistingIds(userIds);
+    }
+
+    public void checkExists(Long... userIds) {
+        if (userIds.length > 1 && userStorage.existAll(List.of(userIds))) {
+            return;
+        }
+        for (Long userId : userIds) {
+            if (!userStorage.existsById(userId)) {
+                log.warn("no user with id = {}", userId);
+                throw new NotFoundException("Пользователь с id = " + userId + " не найден.");
+            }
         }
+    }
 
-        Optional<User> optionalUser2 = userStorage.findById(userId2);
-        if (optionalUser2.isEmpty()) {
-            log.warn("no user with id = {}", userId2);
-            throw new NotFoundException("Пользователь с id = " + userId2 + " не найден.");
+    private List<BatchItemResult> applyFriendships(List<FriendshipEdge> edges,
+                                                   Consumer<List<FriendshipEdge>> action) {
+        Set<Long> referencedIds = new HashSet<>();
+        for (FriendshipEdge edge : edges) {
+            if (edge.getUserId() != null && edge.getFriendId() != null) {
+                referencedIds.add(edge.getUserId());
+                referencedIds.add(edge.getFriendId());
+            }
         }
-        return userStorage.getCommonFriends(userId1, userId2);
+        Set<Long> existingIds = referencedIds.isEmpty() ? Set.of() : userStorage.findExistingIds(referencedIds);
+
+        List<BatchItemResult> results = new ArrayList<>(edges.size());
+        List<FriendshipEdge> accepted = new ArrayList<>();
+        List<BatchItemResult> acceptedResults = new ArrayList<>();
+        for (int i = 0; i < edges.size(); i++) {
+            FriendshipEdge edge = edges.get(i);
+            BatchItemResult result = new BatchItemResult(i, null, null);
+            if (edge.getUserId() == null || edge.getFriendId() == null) {
+                result.setError("Id пользователя и друга должны быть указаны.");
+            } else if (!existingIds.contains(edge.getUserId())) {
+                result.setError("Пользователь с id = " + edge.getUserId() + " не найден.");
+            } else if (!existingIds.contains(edge.getFriendId())) {
+                result.setError("Пользователь с id = " + edge.getFriendId() + " не найден.");
+            } else {
+                accepted.add(edge);
+                acceptedResults.add(result);
+            }
+            results.add(result);
+        }
+        for (int from = 0; from < accepted.size(); from += BATCH_CHUNK_SIZE) {
+            int to = Math.min(from + BATCH_CHUNK_SIZE, accepted.size());
+            try {
+                action.accept(accepted.subList(from, to));
+            } catch (DataAccessException e) {
+                log.warn("failed to apply friendships {}..{}: {}", from, to - 1, e.getMessage());
+                acceptedResults.subList(from, to).forEach(result -> result.setError(SAVE_FAILED));
+            }
+        }
+        return results;
+    }
+
+    private String findValidationError(User user) {
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<User> violation = violations.iterator().next();
+            return violation.getPropertyPath() + " " + violation.getMessage();
+        }
+        if (user.getLogin().contains(" ")) {
+            return "Логин не может содержать пробелы.";
+        }
+        if (user.getBirthday() != null && user.getBirthday().isAfter(LocalDate.now())) {
+            return "Дата рождения не может быть в будущем.";
+        }
+        return null;
+    }
+
+    private Set<UserExpansion> parseExpansions(Set<String> expand) {
+        Set<UserExpansion> expansions = EnumSet.noneOf(UserExpansion.class);
+        for (String value : expand) {
+            if (value.isBlank()) {
+                continue;
+            }
+            try {
+                expansions.add(UserExpansion.valueOf(value.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                log.warn("unknown expand value = {}", value);
+                throw new ValidationException("Неизвестное значение параметра expand: " + value + ".");
+            }
+        }
+        return expansions;
     }
 }
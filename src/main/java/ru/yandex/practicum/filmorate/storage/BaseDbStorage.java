@@ -1,51 +1,86 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
-@RequiredArgsConstructor
 public class BaseDbStorage<T> {
+    private static final String QUERY_TIMER = "filmorate.db.query";
+    private static final String ROWS_SUMMARY = "filmorate.db.rows";
+
     protected final JdbcTemplate jdbc;
     protected final RowMapper<T> mapper;
-    private final Class<T> entityType;
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
 
-    protected Optional<T> findOne(String query, Object... params) {
-        try {
-            T result = jdbc.queryForObject(query, mapper, params);
-            return Optional.ofNullable(result);
-        } catch (EmptyResultDataAccessException ignored) {
-            return Optional.empty();
-        }
+    public BaseDbStorage(JdbcTemplate jdbc, RowMapper<T> mapper) {
+        this.jdbc = jdbc;
+        this.mapper = mapper;
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        timers.clear();
+        rowSummaries.clear();
+    }
+
+    protected Optional<T> findOne(String queryName, String query, Object... params) {
+        return timed(queryName, "findOne", () -> {
+            try {
+                T result = jdbc.queryForObject(query, mapper, params);
+                recordRows(queryName, result != null ? 1 : 0);
+                return Optional.ofNullable(result);
+            } catch (EmptyResultDataAccessException ignored) {
+                recordRows(queryName, 0);
+                return Optional.empty();
+            }
+        });
     }
 
-    protected List<T> findMany(String query, Object... params) {
-        return jdbc.query(query, mapper, params);
+    protected List<T> findMany(String queryName, String query, Object... params) {
+        return timed(queryName, "findMany", () -> {
+            List<T> result = jdbc.query(query, mapper, params);
+            recordRows(queryName, result.size());
+            return result;
+        });
     }
 
-    public boolean delete(String query, Object... params) {
-        int rowsDeleted = jdbc.update(query, params);
+    public boolean delete(String queryName, String query, Object... params) {
+        int rowsDeleted = timed(queryName, "delete", () -> jdbc.update(query, params));
         return rowsDeleted > 0;
     }
 
-    protected long insert(String query, Object... params) {
+    protected long insert(String queryName, String query, Object... params) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbc.update(connection -> {
+        timed(queryName, "insert", () -> jdbc.update(connection -> {
             PreparedStatement ps = connection
                     .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
             for (int idx = 0; idx < params.length; idx++) {
                 ps.setObject(idx + 1, params[idx]);
             }
             return ps;
-        }, keyHolder);
+        }, keyHolder));
 
         Integer id = keyHolder.getKeyAs(Integer.class);
         if (id != null) {
@@ -55,10 +90,100 @@ public class BaseDbStorage<T> {
         }
     }
 
-    protected void update(String query, Object... params) {
-        int rowsUpdated = jdbc.update(query, params);
+    protected List<Long> insertAll(String queryName, String query, List<Object[]> rows) {
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        timed(queryName, "insert", () -> jdbc.batchUpdate(
+                connection -> connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Object[] params = rows.get(i);
+                        for (int idx = 0; idx < params.length; idx++) {
+                            ps.setObject(idx + 1, params[idx]);
+                        }
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                }, keyHolder));
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != rows.size()) {
+            throw new InternalServerException("Не удалось сохранить данные");
+        }
+        return keys.stream()
+                .map(key -> ((Number) key.values().iterator().next()).longValue())
+                .toList();
+    }
+
+    protected void update(String queryName, String query, Object... params) {
+        int rowsUpdated = timed(queryName, "update", () -> jdbc.update(query, params));
         if (rowsUpdated == 0) {
             throw new InternalServerException("Не удалось обновить данные");
         }
     }
+
+    /**
+     * Runs {@code action} once the current transaction commits, or right away when there is none. In-memory
+     * indexes are changed this way, so a rolled back write never reaches them.
+     */
+    protected void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Runs a statement and records its latency under the given query name. Meters are registered once per
+     * query, operation and outcome and reused afterwards.
+     */
+    protected <R> R timed(String queryName, String operation, Supplier<R> action) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            R result = action.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(timers.computeIfAbsent(new MeterKey(queryName, operation, outcome),
+                    key -> Timer.builder(QUERY_TIMER)
+                            .tag("storage", getClass().getSimpleName())
+                            .tag("query", key.queryName())
+                            .tag("operation", key.operation())
+                            .tag("outcome", key.outcome())
+                            .register(meterRegistry)));
+        }
+    }
+
+    /**
+     * Times a load of an in-memory index. The indexes read the database on their own, so their startup
+     * queries are recorded here under the storage that owns them.
+     */
+    protected void timedRebuild(String queryName, Runnable rebuild) {
+        timed(queryName, "findMany", () -> {
+            rebuild.run();
+            return null;
+        });
+    }
+
+    private void recordRows(String queryName, int rows) {
+        rowSummaries.computeIfAbsent(queryName, key -> DistributionSummary.builder(ROWS_SUMMARY)
+                        .tag("storage", getClass().getSimpleName())
+                        .tag("query", key)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(rows);
+    }
+
+    private record MeterKey(String queryName, String operation, String outcome) {
+    }
 }
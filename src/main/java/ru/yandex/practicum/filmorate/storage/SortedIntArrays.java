@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+
+/**
+ * Copy-on-write operations on sorted {@code int[]} id lists used by the in-memory indexes. Arrays passed in
+ * are never modified, so they can be shared with concurrent readers.
+ */
+public final class SortedIntArrays {
+    public static final int[] EMPTY = new int[0];
+    private static final int GALLOP_RATIO = 32;
+
+    private SortedIntArrays() {
+    }
+
+    public static int[] insert(int[] values, int value) {
+        if (values == null) {
+            return new int[]{value};
+        }
+        int position = Arrays.binarySearch(values, value);
+        if (position >= 0) {
+            return values;
+        }
+        position = -position - 1;
+        int[] updated = new int[values.length + 1];
+        System.arraycopy(values, 0, updated, 0, position);
+        updated[position] = value;
+        System.arraycopy(values, position, updated, position + 1, values.length - position);
+        return updated;
+    }
+
+    /**
+     * Returns the array without {@code value}, or {@code null} when nothing is left, so the result can be
+     * returned straight from {@code Map.compute}.
+     */
+    public static int[] remove(int[] values, int value) {
+        int position = Arrays.binarySearch(values, value);
+        if (position < 0) {
+            return values;
+        }
+        if (values.length == 1) {
+            return null;
+        }
+        int[] updated = new int[values.length - 1];
+        System.arraycopy(values, 0, updated, 0, position);
+        System.arraycopy(values, position + 1, updated, position, values.length - position - 1);
+        return updated;
+    }
+
+    /**
+     * Intersects two sorted arrays. Lists of similar size are merged in one pass; when one list is much
+     * shorter, as for a regular user and a celebrity, each of its ids is located in the longer one by
+     * galloping search, so the cost depends on the short list only.
+     */
+    public static int[] intersect(int[] first, int[] second) {
+        int[] small = first.length <= second.length ? first : second;
+        int[] large = small == first ? second : first;
+        int[] common = new int[small.length];
+        int size = 0;
+        if ((long) small.length * GALLOP_RATIO < large.length) {
+            int from = 0;
+            for (int id : small) {
+                int step = 1;
+                while (from + step < large.length && large[from + step] < id) {
+                    step <<= 1;
+                }
+                int position = Arrays.binarySearch(large, from, Math.min(from + step + 1, large.length), id);
+                if (position >= 0) {
+                    common[size++] = id;
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+                if (from >= large.length) {
+                    break;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < small.length && j < large.length) {
+                if (small[i] < large[j]) {
+                    i++;
+                } else if (small[i] > large[j]) {
+                    j++;
+                } else {
+                    common[size++] = small[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return size == common.length ? common : Arrays.copyOf(common, size);
+    }
+}
@@ -0,0 +1,200 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.event.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache in front of {@link FilmDbStorage#findById}; writes evict the films they touch.
+ * Recommendations and search results are taken from the {@link LikeMatrix} and the {@link FilmSearchIndex}
+ * and hydrated through the cache.
+ */
+@Component
+@Qualifier("cachedFilmStorage")
+public class CachedFilmStorage implements FilmStorage {
+    private final FilmStorage delegate;
+    private final Cache<Long, Film> cache;
+    private final LikeMatrix likeMatrix;
+    private final FilmSearchIndex searchIndex;
+
+    public CachedFilmStorage(@Qualifier("filmDbStorage") FilmStorage delegate,
+                             @Value("${filmorate.cache.films.maximum-size:10000}") long maximumSize,
+                             @Value("${filmorate.cache.films.expire-after-write:10m}") Duration expireAfterWrite,
+                             LikeMatrix likeMatrix,
+                             FilmSearchIndex searchIndex) {
+        this.delegate = delegate;
+        this.likeMatrix = likeMatrix;
+        this.searchIndex = searchIndex;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Autowired(required = false)
+    public void bindMetrics(MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "films");
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        evictAll();
+    }
+
+    @Override
+    public Film create(Film film) {
+        return delegate.create(film);
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return delegate.createAll(films);
+    }
+
+    @Override
+    public Film update(Film film) {
+        Film updated = delegate.update(film);
+        cache.invalidate(film.getId());
+        return updated;
+    }
+
+    @Override
+    public Film delete(Long filmId) {
+        Film deleted = delegate.delete(filmId);
+        cache.invalidate(filmId);
+        return deleted;
+    }
+
+    @Override
+    public Optional<Film> findById(Long filmId) {
+        return Optional.ofNullable(cache.get(filmId, id -> delegate.findById(id).orElse(null)));
+    }
+
+    @Override
+    public List<Film> findByIds(List<Long> filmIds) {
+        Map<Long, Film> filmsById = cache.getAll(filmIds, missing -> {
+            Map<Long, Film> loaded = new HashMap<>();
+            delegate.findByIds(List.copyOf(missing)).forEach(film -> loaded.put(film.getId(), film));
+            return loaded;
+        });
+        return filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public boolean existsById(Long filmId) {
+        return cache.getIfPresent(filmId) != null || delegate.existsById(filmId);
+    }
+
+    @Override
+    public boolean existAll(Collection<Long> filmIds) {
+        return delegate.existAll(filmIds);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> filmIds) {
+        return delegate.findExistingIds(filmIds);
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Film> findPage(Long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        delegate.streamAll(consumer);
+    }
+
+    @Override
+    public Optional<Film> likeAFilm(Long filmId, Long userId) {
+        Optional<Film> film = delegate.likeAFilm(filmId, userId);
+        cache.invalidate(filmId);
+        return film;
+    }
+
+    @Override
+    public Optional<Film> unlikeAFilm(Long filmId, Long userId) {
+        Optional<Film> film = delegate.unlikeAFilm(filmId, userId);
+        cache.invalidate(filmId);
+        return film;
+    }
+
+    @Override
+    public long saveLike(Long filmId, Long userId) {
+        long likes = delegate.saveLike(filmId, userId);
+        cache.invalidate(filmId);
+        return likes;
+    }
+
+    @Override
+    public long removeLike(Long filmId, Long userId) {
+        long likes = delegate.removeLike(filmId, userId);
+        cache.invalidate(filmId);
+        return likes;
+    }
+
+    @Override
+    public boolean[] applyLikes(List<LikeEvent> events) {
+        boolean[] changed = delegate.applyLikes(events);
+        events.forEach(event -> cache.invalidate(event.getFilmId()));
+        return changed;
+    }
+
+    @Override
+    public int repairLikeCounts() {
+        return delegate.repairLikeCounts();
+    }
+
+    @Override
+    public List<Film> getTopFilms(int count, Long genreId, Integer year) {
+        return delegate.getTopFilms(count, genreId, year);
+    }
+
+    @Override
+    public List<Film> getRecommendations(Long userId, int count) {
+        return findByIds(likeMatrix.recommend(userId, count));
+    }
+
+    @Override
+    public List<Film> search(String query, Set<FilmSearchField> fields, int count) {
+        return findByIds(searchIndex.search(query, fields, count));
+    }
+}
@@ -1,41 +1,82 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import org.springframework.dao.EmptyResultDataAccessException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
 import ru.yandex.practicum.filmorate.storage.BaseDbStorage;
-import ru.yandex.practicum.filmorate.storage.mappers.GenreRowMapper;
-import ru.yandex.practicum.filmorate.storage.mappers.MPARowMapper;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
+@Slf4j
 @Component
+@Qualifier("filmDbStorage")
 public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
-    private static final String FIND_ALL_QUERY = "SELECT * FROM films";
-    private static final String FIND_BY_ID_QUERY = "SELECT * FROM films WHERE id = ?";
-    private static final String FIND_MPA_BY_ID = "SELECT * FROM mpa WHERE id = ?";
-    private static final String FIND_MPA_BY_FILM_ID = "SELECT * FROM mpa WHERE id " +
-            "IN (SELECT mpa_id FROM films WHERE id = ?)";
-    private static final String FIND_GENRE_BY_ID = "SELECT * FROM genres WHERE id = ?";
-    private static final String FIND_GENRES_BY_FILM_ID = "SELECT * FROM genres WHERE id " +
-            "IN (SELECT genre_id FROM film_genres WHERE film_id = ?)";
+    private static final String FIND_ALL_QUERY = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT OUTER JOIN mpa m ON f.mpa_id = m.id";
+    private static final String FIND_BY_ID_QUERY = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT OUTER JOIN mpa m ON f.mpa_id = m.id " +
+            "WHERE f.id = ?";
+    private static final String EXISTS_BY_ID_QUERY = "SELECT EXISTS (SELECT 1 FROM films WHERE id = ?)";
+    private static final String COUNT_BY_IDS_QUERY = "SELECT COUNT(*) FROM films WHERE id = ANY(?)";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT f.id FROM films f " +
+            "JOIN UNNEST(?) AS ids(id) ON f.id = ids.id";
+    private static final String FIND_BY_IDS_QUERY = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT OUTER JOIN mpa m ON f.mpa_id = m.id " +
+            "WHERE f.id = ANY(?)";
+    private static final String FIND_PAGE_QUERY = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT OUTER JOIN mpa m ON f.mpa_id = m.id " +
+            "WHERE f.id > ? " +
+            "ORDER BY f.id " +
+            "LIMIT ?";
+    private static final String STREAM_ALL_QUERY = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT OUTER JOIN mpa m ON f.mpa_id = m.id " +
+            "ORDER BY f.id";
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final String FIND_REFERENCES_BY_FILM_IDS = "SELECT film_id, 'G' AS kind, id AS ref_id, name " +
+            "FROM (SELECT DISTINCT fg.film_id, g.id, g.name FROM film_genres fg " +
+            "JOIN genres g ON fg.genre_id = g.id " +
+            "WHERE fg.film_id = ANY(?)) " +
+            "UNION ALL " +
+            "SELECT film_id, 'L', user_id, NULL FROM film_likes " +
+            "WHERE film_id = ANY(?)";
+    private static final String FIND_ALL_FILM_GENRES = "SELECT DISTINCT fg.film_id, g.id, g.name " +
+            "FROM film_genres fg " +
+            "JOIN genres g ON fg.genre_id = g.id " +
+            "ORDER BY fg.film_id, g.id";
     private static final String LIKE_A_FILM = "INSERT INTO film_likes (film_id, user_id) " +
-            "VALUES (?, ?)";
+            "SELECT ?, ? FROM DUAL " +
+            "WHERE NOT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)";
     private static final String UNLIKE_A_FILM = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
-    private static final String FIND_LIKES_BY_FILM_ID = "SELECT id FROM users WHERE id " +
-            "IN (SELECT user_id FROM film_likes WHERE film_id = ?)";
-    private static final String FIND_TOP_FILMS = "SELECT f.* FROM films f " +
-            "LEFT OUTER JOIN film_likes fl ON f.id = fl.film_id " +
-            "GROUP BY f.id " +
-            "ORDER BY COUNT(f.id) DESC " +
-            "LIMIT ?";
+    private static final String INCREMENT_LIKE_COUNT = "SELECT like_count FROM FINAL TABLE " +
+            "(UPDATE films SET like_count = like_count + 1 WHERE id = ?)";
+    private static final String DECREMENT_LIKE_COUNT = "SELECT like_count FROM FINAL TABLE " +
+            "(UPDATE films SET like_count = like_count - 1 WHERE id = ?)";
+    private static final String ADD_LIKE_COUNT = "UPDATE films SET like_count = like_count + ? WHERE id = ?";
+    private static final String REPAIR_LIKE_COUNTS = "UPDATE films f " +
+            "SET like_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id) " +
+            "WHERE like_count <> (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id)";
+    private static final String FIND_ALL_FILM_LIKES = "SELECT film_id, user_id FROM film_likes";
     private static final String INSERT_QUERY = "INSERT INTO films (name, description, release_date, duration, mpa_id) " +
             "VALUES (?, ?, ?, ?, ?)";
     private static final String UPDATE_QUERY = "UPDATE films SET name = ?, description = ?, release_date = ?, " +
@@ -43,13 +84,30 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     private static final String INSERT_GENRE_QUERY = "INSERT INTO film_genres SET film_id = ?, genre_id = ?";
     private static final String DELETE_QUERY = "DELETE FROM films WHERE id = ?";
 
-    public FilmDbStorage(JdbcTemplate jdbc, RowMapper<Film> mapper) {
-        super(jdbc, mapper, Film.class);
+    private final FilmLeaderboard leaderboard;
+    private final LikeMatrix likeMatrix;
+    private final FilmSearchIndex searchIndex;
+
+    public FilmDbStorage(JdbcTemplate jdbc, RowMapper<Film> mapper, FilmLeaderboard leaderboard,
+                         LikeMatrix likeMatrix, FilmSearchIndex searchIndex) {
+        super(jdbc, mapper);
+        this.leaderboard = leaderboard;
+        this.likeMatrix = likeMatrix;
+        this.searchIndex = searchIndex;
+    }
+
+    @PostConstruct
+    public void init() {
+        repairLikeCounts();
+        timedRebuild("rebuildLeaderboard", leaderboard::rebuild);
+        timedRebuild("rebuildLikeMatrix", likeMatrix::rebuild);
+        timedRebuild("rebuildSearchIndex", searchIndex::rebuild);
     }
 
     @Override
     public Film create(Film film) {
         Long lastId = insert(
+                "insert",
                 INSERT_QUERY,
                 film.getName(),
                 film.getDescription(),
@@ -59,12 +117,48 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         );
         batchGenreUpdate(lastId, film.getGenres().stream().toList());
         film.setId(lastId);
+        afterCommit(() -> {
+            leaderboard.addFilm(film);
+            searchIndex.index(film);
+        });
         return film;
     }
 
+    @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        List<Object[]> rows = films.stream()
+                .map(film -> new Object[]{
+                        film.getName(),
+                        film.getDescription(),
+                        film.getReleaseDate(),
+                        film.getDuration(),
+                        film.getMpa() != null ? film.getMpa().getId() : null
+                })
+                .toList();
+        List<Long> ids = insertAll("insert", INSERT_QUERY, rows);
+
+        List<Object[]> genreRows = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(ids.get(i));
+            film.getGenres().stream()
+                    .map(Genre::getId)
+                    .distinct()
+                    .forEach(genreId -> genreRows.add(new Object[]{film.getId(), genreId}));
+        }
+        timed("insertGenre", "insert", () -> jdbc.batchUpdate(INSERT_GENRE_QUERY, genreRows));
+        afterCommit(() -> films.forEach(film -> {
+            leaderboard.addFilm(film);
+            searchIndex.index(film);
+        }));
+        return films;
+    }
+
     @Override
     public Film update(Film film) {
         update(
+                "update",
                 UPDATE_QUERY,
                 film.getName(),
                 film.getDescription(),
@@ -73,6 +167,10 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 film.getMpa() != null ? film.getMpa().getId() : null,
                 film.getId()
         );
+        afterCommit(() -> {
+            leaderboard.changeReleaseDate(film.getId(), film.getReleaseDate());
+            searchIndex.index(film);
+        });
         return film;
     }
 
@@ -80,99 +178,314 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     public Film delete(Long filmId) {
         Film film = findById(filmId).get();
         delete(
+                "delete",
                 DELETE_QUERY,
                 filmId
         );
+        afterCommit(() -> {
+            leaderboard.removeFilm(filmId);
+            likeMatrix.removeFilm(filmId);
+            searchIndex.removeFilm(filmId);
+        });
         return film;
     }
 
     @Override
     public Optional<Film> findById(Long filmId) {
         Optional<Film> film = findOne(
+                "findById",
                 FIND_BY_ID_QUERY,
                 filmId
         );
-        film.ifPresent(this::getReferences);
+        film.ifPresent(value -> getReferences(List.of(value)));
         return film;
     }
 
     @Override
-    public Optional<MPA> findMPAById(Long mpaId) {
-        return queryForOptional(FIND_MPA_BY_ID, new MPARowMapper(), mpaId);
+    public boolean existsById(Long filmId) {
+        return Boolean.TRUE.equals(timed("existsById", "exists",
+                () -> jdbc.queryForObject(EXISTS_BY_ID_QUERY, Boolean.class, filmId)));
     }
 
     @Override
-    public Optional<Genre> findGenreById(Long genreId) {
-        return queryForOptional(FIND_GENRE_BY_ID, new GenreRowMapper(), genreId);
+    public boolean existAll(Collection<Long> filmIds) {
+        Long[] distinctIds = filmIds.stream().distinct().toArray(Long[]::new);
+        Integer found = timed("countByIds", "exists",
+                () -> jdbc.queryForObject(COUNT_BY_IDS_QUERY, Integer.class, (Object) distinctIds));
+        return found != null && found == distinctIds.length;
     }
 
     @Override
-    public List<Long> findUnknownFilmGenres(List<Genre> genres) {
-        if (genres.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        String sql = "SELECT id FROM genres";
-        List<Long> genreIds = jdbc.queryForList(sql, Long.class);
-
-        return new ArrayList<>(genres)
-                .stream()
-                .map(Genre::getId)
-                .filter(genreId -> !genreIds.contains(genreId))
-                .toList();
+    public Set<Long> findExistingIds(Collection<Long> filmIds) {
+        Long[] distinctIds = filmIds.stream().distinct().toArray(Long[]::new);
+        return new HashSet<>(timed("findExistingIds", "exists",
+                () -> jdbc.queryForList(FIND_EXISTING_IDS_QUERY, Long.class, (Object) distinctIds)));
     }
 
     @Override
     public List<Film> findAll() {
-        return findMany(
+        List<Film> films = findMany(
+                "findAll",
                 FIND_ALL_QUERY
         );
+        getAllReferences(films);
+        return films;
+    }
+
+    @Override
+    public List<Film> findPage(Long afterId, int limit) {
+        List<Film> films = findMany(
+                "findPage",
+                FIND_PAGE_QUERY,
+                afterId,
+                limit
+        );
+        getReferences(films);
+        return films;
     }
 
     @Override
+    public void streamAll(Consumer<Film> consumer) {
+        List<Film> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        timed("streamAll", "findMany", () -> {
+            jdbc.query(STREAM_ALL_QUERY, (RowCallbackHandler) rs -> {
+                chunk.add(mapper.mapRow(rs, rs.getRow()));
+                if (chunk.size() == STREAM_CHUNK_SIZE) {
+                    flushChunk(chunk, consumer);
+                }
+            });
+            return null;
+        });
+        flushChunk(chunk, consumer);
+    }
+
+    @Override
+    @Transactional
     public Optional<Film> likeAFilm(Long filmId, Long userId) {
-        insert(LIKE_A_FILM, filmId, userId);
+        saveLike(filmId, userId);
         return findById(filmId);
     }
 
     @Override
+    @Transactional
     public Optional<Film> unlikeAFilm(Long filmId, Long userId) {
-        update(UNLIKE_A_FILM, filmId, userId);
+        removeLike(filmId, userId);
         return findById(filmId);
     }
 
+    /**
+     * Returns the like count written by this call, so the answer is exact before the leaderboard catches up
+     * on commit.
+     */
     @Override
-    public List<Film> getTopFilms(int count) {
-        List<Film> topFilms = new ArrayList<>(findMany(FIND_TOP_FILMS, count));
-        topFilms.forEach(this::getReferences);
-        return topFilms;
+    @Transactional
+    public long saveLike(Long filmId, Long userId) {
+        if (timed("likeAFilm", "insert", () -> jdbc.update(LIKE_A_FILM, filmId, userId, filmId, userId)) == 0) {
+            return leaderboard.getLikes(filmId);
+        }
+        Long likes = timed("incrementLikeCount", "update",
+                () -> jdbc.queryForObject(INCREMENT_LIKE_COUNT, Long.class, filmId));
+        afterCommit(() -> {
+            leaderboard.like(filmId);
+            likeMatrix.like(filmId, userId);
+        });
+        return likes;
     }
 
-    private void getReferences(Film film) {
-        queryForOptional(FIND_MPA_BY_FILM_ID, new MPARowMapper(), film.getId()).ifPresent(film::setMpa);
-        film.getGenres().addAll(jdbc.query(FIND_GENRES_BY_FILM_ID, new GenreRowMapper(), film.getId()));
-        film.getLikes().addAll(jdbc.queryForList(FIND_LIKES_BY_FILM_ID, Long.class, film.getId()));
+    /**
+     * Removing a like that does not exist changes nothing and returns the current count, as a repeated like
+     * does in {@link #saveLike}.
+     */
+    @Override
+    @Transactional
+    public long removeLike(Long filmId, Long userId) {
+        if (!delete("unlikeAFilm", UNLIKE_A_FILM, filmId, userId)) {
+            return leaderboard.getLikes(filmId);
+        }
+        Long likes = timed("decrementLikeCount", "update",
+                () -> jdbc.queryForObject(DECREMENT_LIKE_COUNT, Long.class, filmId));
+        afterCommit(() -> {
+            leaderboard.unlike(filmId);
+            likeMatrix.unlike(filmId, userId);
+        });
+        return likes;
     }
 
-    private <T> Optional<T> queryForOptional(String sql, RowMapper<T> rowMapper, Object... args) {
-        try {
-            return Optional.ofNullable(jdbc.queryForObject(sql, rowMapper, args));
-        } catch (EmptyResultDataAccessException e) {
-            return Optional.empty();
+    @Override
+    @Transactional
+    public boolean[] applyLikes(List<LikeEvent> events) {
+        List<Object[]> likes = new ArrayList<>();
+        List<Object[]> unlikes = new ArrayList<>();
+        for (LikeEvent event : events) {
+            if (event.getOp() == LikeOperation.LIKE) {
+                likes.add(new Object[]{event.getFilmId(), event.getUserId(), event.getFilmId(), event.getUserId()});
+            } else {
+                unlikes.add(new Object[]{event.getFilmId(), event.getUserId()});
+            }
+        }
+        int[] liked = timed("likeAFilm", "insert", () -> jdbc.batchUpdate(LIKE_A_FILM, likes));
+        int[] unliked = timed("unlikeAFilm", "delete", () -> jdbc.batchUpdate(UNLIKE_A_FILM, unlikes));
+
+        boolean[] changed = new boolean[events.size()];
+        Map<Long, Long> deltas = new HashMap<>();
+        List<LikeEvent> applied = new ArrayList<>();
+        int likeIdx = 0;
+        int unlikeIdx = 0;
+        for (int i = 0; i < events.size(); i++) {
+            LikeEvent event = events.get(i);
+            if (event.getOp() == LikeOperation.LIKE) {
+                changed[i] = liked[likeIdx++] > 0;
+                if (changed[i]) {
+                    deltas.merge(event.getFilmId(), 1L, Long::sum);
+                    applied.add(event);
+                }
+            } else {
+                changed[i] = unliked[unlikeIdx++] > 0;
+                if (changed[i]) {
+                    deltas.merge(event.getFilmId(), -1L, Long::sum);
+                    applied.add(event);
+                }
+            }
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        List<Object[]> counts = deltas.entrySet().stream()
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .toList();
+        timed("addLikeCount", "update", () -> jdbc.batchUpdate(ADD_LIKE_COUNT, counts));
+        afterCommit(() -> {
+            deltas.forEach(leaderboard::change);
+            for (LikeEvent event : applied) {
+                if (event.getOp() == LikeOperation.LIKE) {
+                    likeMatrix.like(event.getFilmId(), event.getUserId());
+                } else {
+                    likeMatrix.unlike(event.getFilmId(), event.getUserId());
+                }
+            }
+        });
+        return changed;
+    }
+
+    @Override
+    public int repairLikeCounts() {
+        int repaired = timed("repairLikeCounts", "update", () -> jdbc.update(REPAIR_LIKE_COUNTS));
+        if (repaired > 0) {
+            log.warn("like_count repaired for {} films", repaired);
         }
+        return repaired;
+    }
+
+    @Override
+    public List<Film> getTopFilms(int count, Long genreId, Integer year) {
+        return findByIds(leaderboard.getTop(count, genreId, year));
+    }
+
+    @Override
+    public List<Film> getRecommendations(Long userId, int count) {
+        return findByIds(likeMatrix.recommend(userId, count));
+    }
+
+    @Override
+    public List<Film> search(String query, Set<FilmSearchField> fields, int count) {
+        return findByIds(searchIndex.search(query, fields, count));
+    }
+
+    @Override
+    public List<Film> findByIds(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Film> filmsById = mapById(findMany("findByIds", FIND_BY_IDS_QUERY,
+                (Object) filmIds.toArray(new Long[0])));
+        getReferences(filmsById.values());
+        return filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private void getReferences(Collection<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Film> filmsById = mapById(films);
+        Long[] filmIds = filmsById.keySet().toArray(new Long[0]);
+        timed("findReferencesByFilmIds", "findMany", () -> jdbc.query(FIND_REFERENCES_BY_FILM_IDS,
+                referencesExtractor(filmsById), filmIds, filmIds));
+        filmsById.values().forEach(film -> film.getGenres().sort(Comparator.comparing(Genre::getId)));
+    }
+
+    private void flushChunk(List<Film> chunk, Consumer<Film> consumer) {
+        getReferences(chunk);
+        chunk.forEach(consumer);
+        chunk.clear();
+    }
+
+    private void getAllReferences(Collection<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Film> filmsById = mapById(films);
+        timed("findAllFilmGenres", "findMany", () -> jdbc.query(FIND_ALL_FILM_GENRES, genresExtractor(filmsById)));
+        timed("findAllFilmLikes", "findMany", () -> jdbc.query(FIND_ALL_FILM_LIKES, likesExtractor(filmsById)));
+    }
+
+    private Map<Long, Film> mapById(Collection<Film> films) {
+        Map<Long, Film> filmsById = new HashMap<>();
+        films.forEach(film -> filmsById.put(film.getId(), film));
+        return filmsById;
+    }
+
+    private ResultSetExtractor<Void> genresExtractor(Map<Long, Film> filmsById) {
+        return rs -> {
+            while (rs.next()) {
+                Film film = filmsById.get(rs.getLong("film_id"));
+                if (film != null) {
+                    film.getGenres().add(new Genre(rs.getLong("id"), rs.getString("name")));
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Reads genres ({@code kind = 'G'}) and likes ({@code kind = 'L'}) of several films from one result set,
+     * so hydrating a film costs one round trip instead of one per reference table.
+     */
+    private ResultSetExtractor<Void> referencesExtractor(Map<Long, Film> filmsById) {
+        return rs -> {
+            while (rs.next()) {
+                Film film = filmsById.get(rs.getLong("film_id"));
+                if (film == null) {
+                    continue;
+                }
+                if ("G".equals(rs.getString("kind"))) {
+                    film.getGenres().add(new Genre(rs.getLong("ref_id"), rs.getString("name")));
+                } else {
+                    film.getLikes().add(rs.getLong("ref_id"));
+                }
+            }
+            return null;
+        };
+    }
+
+    private ResultSetExtractor<Void> likesExtractor(Map<Long, Film> filmsById) {
+        return rs -> {
+            while (rs.next()) {
+                Film film = filmsById.get(rs.getLong("film_id"));
+                if (film != null) {
+                    film.getLikes().add(rs.getLong("user_id"));
+                }
+            }
+            return null;
+        };
     }
 
     private void batchGenreUpdate(Long filmId, final List<Genre> genres) {
         List<Object[]> batch = new ArrayList<>();
-        for (Genre genre : genres) {
-            Object[] values = new Object[]{
-                    filmId, genre.getId()
-            };
-            batch.add(values);
-        }
-        jdbc.batchUpdate(
-                INSERT_GENRE_QUERY,
-                batch
-        );
+        genres.stream()
+                .map(Genre::getId)
+                .distinct()
+                .forEach(genreId -> batch.add(new Object[]{filmId, genreId}));
+        timed("insertGenre", "insert", () -> jdbc.batchUpdate(INSERT_GENRE_QUERY, batch));
     }
 }
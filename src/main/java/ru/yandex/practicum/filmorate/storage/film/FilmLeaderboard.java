@@ -0,0 +1,258 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.event.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Keeps films ranked by like count so that the top of the ranking can be read without
+ * aggregating film_likes on every request. Besides the overall ranking there is one ranking per genre
+ * and one per release year, so filtered tops are read the same way.
+ *
+ * <p>Each film's counter is changed inside {@link ConcurrentHashMap#compute}, which serializes
+ * updates of the same film, and the ranking entries are replaced in the same step.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmLeaderboard {
+    private static final String FIND_LIKE_COUNTS = "SELECT id, like_count, " +
+            "EXTRACT(YEAR FROM release_date) AS release_year FROM films";
+    private static final String FIND_FILM_GENRES = "SELECT film_id, genre_id FROM film_genres";
+    private static final long[] NO_GENRES = new long[0];
+
+    private final JdbcTemplate jdbc;
+    private volatile Board board = new Board();
+
+    public void rebuild() {
+        Map<Long, List<Long>> genres = new HashMap<>();
+        jdbc.query(FIND_FILM_GENRES, (RowCallbackHandler) rs ->
+                genres.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(rs.getLong("genre_id")));
+        Board rebuilt = new Board();
+        jdbc.query(FIND_LIKE_COUNTS, (RowCallbackHandler) rs -> {
+            long filmId = rs.getLong("id");
+            int releaseYear = rs.getInt("release_year");
+            Integer year = rs.wasNull() ? null : releaseYear;
+            long[] genreIds = genres.getOrDefault(filmId, List.of()).stream()
+                    .mapToLong(Long::longValue)
+                    .distinct()
+                    .toArray();
+            rebuilt.put(filmId, new Entry(rs.getLong("like_count"), year, genreIds));
+        });
+        board = rebuilt;
+        log.debug("leaderboard rebuilt, films = {}", rebuilt.films.size());
+    }
+
+    /**
+     * Takes back the likes of a deleted user film by film, so deltas applied meanwhile by other likes are kept.
+     */
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        event.getLikedFilmIds().forEach(filmId -> change(filmId, -1));
+    }
+
+    public void addFilm(Film film) {
+        long[] genreIds = film.getGenres().stream()
+                .mapToLong(Genre::getId)
+                .distinct()
+                .toArray();
+        board.describe(film.getId(), year(film.getReleaseDate()), genreIds);
+    }
+
+    public void changeReleaseDate(Long filmId, LocalDate releaseDate) {
+        board.changeYear(filmId, year(releaseDate));
+    }
+
+    public void removeFilm(Long filmId) {
+        board.remove(filmId);
+    }
+
+    public void like(Long filmId) {
+        board.change(filmId, 1);
+    }
+
+    public void unlike(Long filmId) {
+        board.change(filmId, -1);
+    }
+
+    public void change(Long filmId, long delta) {
+        board.change(filmId, delta);
+    }
+
+    public long getLikes(Long filmId) {
+        Entry entry = board.films.get(filmId);
+        return entry != null ? entry.likes() : 0L;
+    }
+
+    public List<Long> getTop(int count) {
+        return getTop(count, null, null);
+    }
+
+    /**
+     * Returns the most liked films, optionally only of the given genre and release year. When both filters
+     * are set, the year ranking is walked and checked against the genre: a year holds a small share of the
+     * films, while a genre can hold most of them.
+     */
+    public List<Long> getTop(int count, Long genreId, Integer year) {
+        Board current = board;
+        Set<Rank> ranking;
+        if (year != null) {
+            ranking = current.byYear.getOrDefault(year, Board.EMPTY);
+        } else if (genreId != null) {
+            ranking = current.byGenre.getOrDefault(genreId, Board.EMPTY);
+        } else {
+            ranking = current.ranking;
+        }
+        boolean checkGenre = year != null && genreId != null;
+        Set<Long> top = new LinkedHashSet<>();
+        Iterator<Rank> iterator = ranking.iterator();
+        while (top.size() < count && iterator.hasNext()) {
+            long filmId = iterator.next().filmId();
+            if (!checkGenre || current.hasGenre(filmId, genreId)) {
+                top.add(filmId);
+            }
+        }
+        return new ArrayList<>(top);
+    }
+
+    private static Integer year(LocalDate releaseDate) {
+        return releaseDate != null ? releaseDate.getYear() : null;
+    }
+
+    private record Entry(long likes, Integer year, long[] genreIds) {
+    }
+
+    private static class Board {
+        private static final ConcurrentSkipListSet<Rank> EMPTY = new ConcurrentSkipListSet<>();
+
+        private final ConcurrentHashMap<Long, Entry> films = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>();
+        private final ConcurrentHashMap<Long, ConcurrentSkipListSet<Rank>> byGenre = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Integer, ConcurrentSkipListSet<Rank>> byYear = new ConcurrentHashMap<>();
+
+        private void put(long filmId, Entry entry) {
+            films.put(filmId, entry);
+            rank(filmId, entry);
+        }
+
+        private void change(long filmId, long delta) {
+            films.compute(filmId, (id, current) -> {
+                long previous = current != null ? current.likes() : 0L;
+                long updated = Math.max(previous + delta, 0L);
+                if (current != null && updated == previous) {
+                    return current;
+                }
+                Entry entry = current != null
+                        ? new Entry(updated, current.year(), current.genreIds())
+                        : new Entry(updated, null, NO_GENRES);
+                replace(id, current, entry);
+                return entry;
+            });
+        }
+
+        private void describe(long filmId, Integer year, long[] genreIds) {
+            films.compute(filmId, (id, current) -> {
+                Entry entry = new Entry(current != null ? current.likes() : 0L, year, genreIds);
+                replace(id, current, entry);
+                return entry;
+            });
+        }
+
+        private void changeYear(long filmId, Integer year) {
+            films.computeIfPresent(filmId, (id, current) -> {
+                Entry entry = new Entry(current.likes(), year, current.genreIds());
+                replace(id, current, entry);
+                return entry;
+            });
+        }
+
+        private void remove(long filmId) {
+            films.computeIfPresent(filmId, (id, current) -> {
+                unrank(id, current);
+                return null;
+            });
+        }
+
+        private boolean hasGenre(long filmId, long genreId) {
+            Entry entry = films.get(filmId);
+            if (entry == null) {
+                return false;
+            }
+            for (long id : entry.genreIds()) {
+                if (id == genreId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds the new ranking entries before removing the old ones, so readers never miss the film. When the
+         * like count is unchanged the entries are equal, so they are only removed from the rankings the film
+         * has left.
+         */
+        private void replace(long filmId, Entry previous, Entry updated) {
+            List<ConcurrentSkipListSet<Rank>> updatedRankings = rankings(updated, true);
+            Rank rank = new Rank(updated.likes(), filmId);
+            updatedRankings.forEach(set -> set.add(rank));
+            if (previous == null) {
+                return;
+            }
+            Rank previousRank = new Rank(previous.likes(), filmId);
+            for (ConcurrentSkipListSet<Rank> set : rankings(previous, false)) {
+                if (!previousRank.equals(rank) || updatedRankings.stream().noneMatch(kept -> kept == set)) {
+                    set.remove(previousRank);
+                }
+            }
+        }
+
+        private void rank(long filmId, Entry entry) {
+            Rank rank = new Rank(entry.likes(), filmId);
+            rankings(entry, true).forEach(set -> set.add(rank));
+        }
+
+        private void unrank(long filmId, Entry entry) {
+            Rank rank = new Rank(entry.likes(), filmId);
+            rankings(entry, false).forEach(set -> set.remove(rank));
+        }
+
+        private List<ConcurrentSkipListSet<Rank>> rankings(Entry entry, boolean create) {
+            List<ConcurrentSkipListSet<Rank>> sets = new ArrayList<>(entry.genreIds().length + 2);
+            sets.add(ranking);
+            if (entry.year() != null) {
+                sets.add(create ? byYear.computeIfAbsent(entry.year(), year -> new ConcurrentSkipListSet<>())
+                        : byYear.getOrDefault(entry.year(), EMPTY));
+            }
+            for (long genreId : entry.genreIds()) {
+                sets.add(create ? byGenre.computeIfAbsent(genreId, genre -> new ConcurrentSkipListSet<>())
+                        : byGenre.getOrDefault(genreId, EMPTY));
+            }
+            return sets;
+        }
+    }
+
+    private record Rank(long likes, long filmId) implements Comparable<Rank> {
+        @Override
+        public int compareTo(Rank other) {
+            int result = Long.compare(other.likes, likes);
+            return result != 0 ? result : Long.compare(filmId, other.filmId);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
+import ru.yandex.practicum.filmorate.storage.SortedIntArrays;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over film titles and descriptions. Text is split into letters and digits, lower-cased,
+ * {@code ё} is folded into {@code е} and words lose their common Russian or English inflection endings, so
+ * "Звёздные войны" is found by "звездная война". Every term maps to the sorted ids of the films containing it.
+ *
+ * <p>As in {@link LikeMatrix}, posting arrays are replaced inside {@link ConcurrentHashMap#compute} and never
+ * modified in place. Changes of one film are serialized by the film's entry in the documents map.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex {
+    private static final String FIND_ALL_TEXTS = "SELECT id, name, description FROM films";
+    private static final int MAX_QUERY_TERMS = 16;
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями",
+            "ями", "ами", "иях", "ого", "его", "ому", "ему", "ыми", "ими", "ией",
+            "ая", "яя", "ое", "ее", "ые", "ие", "ый", "ий", "ой", "ом", "ем", "ам", "ям", "ах", "ях", "ов", "ев",
+            "ей", "ую", "юю", "ия", "ии", "ию", "ья", "ье", "ьи", "ью",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+    private static final String[] ENGLISH_ENDINGS = {"ing", "ed", "es", "ly", "s", "e"};
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingDouble(Hit::score)
+            .thenComparing(Hit::filmId, Comparator.reverseOrder());
+
+    private final JdbcTemplate jdbc;
+    private final FilmLeaderboard leaderboard;
+    private final double likeWeight;
+    private volatile Index index = new Index();
+
+    public FilmSearchIndex(JdbcTemplate jdbc, FilmLeaderboard leaderboard,
+                           @Value("${filmorate.search.like-weight:0.05}") double likeWeight) {
+        this.jdbc = jdbc;
+        this.leaderboard = leaderboard;
+        this.likeWeight = likeWeight;
+    }
+
+    public void rebuild() {
+        load(jdbc.query(FIND_ALL_TEXTS, (rs, rowNum) -> {
+            Film film = new Film();
+            film.setId(rs.getLong("id"));
+            film.setName(rs.getString("name"));
+            film.setDescription(rs.getString("description"));
+            return film;
+        }));
+    }
+
+    /**
+     * Replaces the index with the titles and descriptions of the given films.
+     */
+    public void load(Collection<Film> films) {
+        Index loaded = new Index();
+        Map<FilmSearchField, Map<String, IdBuffer>> buffers = new EnumMap<>(FilmSearchField.class);
+        for (FilmSearchField field : FilmSearchField.values()) {
+            buffers.put(field, new HashMap<>());
+        }
+        for (Film film : films) {
+            int filmId = Math.toIntExact(film.getId());
+            Document document = document(film);
+            loaded.documents.put(filmId, document);
+            for (FilmSearchField field : FilmSearchField.values()) {
+                for (String term : document.terms(field)) {
+                    buffers.get(field).computeIfAbsent(term, key -> new IdBuffer()).add(filmId);
+                }
+            }
+        }
+        buffers.forEach((field, terms) -> terms.forEach((term, ids) -> {
+            int[] sorted = Arrays.copyOf(ids.values, ids.size);
+            Arrays.sort(sorted);
+            loaded.postings.get(field).put(term, sorted);
+        }));
+        index = loaded;
+        log.debug("search index rebuilt, films = {}, terms = {}", loaded.documents.size(),
+                loaded.postings.values().stream().mapToInt(Map::size).sum());
+    }
+
+    public void index(Film film) {
+        index.put(Math.toIntExact(film.getId()), document(film));
+    }
+
+    public void removeFilm(Long filmId) {
+        index.remove(Math.toIntExact(filmId));
+    }
+
+    /**
+     * Returns up to {@code count} films containing any of the query terms in the given fields. A match is worth
+     * the term's inverse document frequency, doubled for a title match; the sum is divided by the score of a
+     * film matching every term in every field and increased by {@code likeWeight × ln(1 + likes)}, so among
+     * equally relevant films the popular ones come first.
+     *
+     * <p>Posting lists of all query terms are merged in one pass over the sorted ids, keeping only the best
+     * {@code count} films in a heap.
+     */
+    public List<Long> search(String query, Set<FilmSearchField> fields, int count) {
+        Index current = index;
+        Set<String> queryTerms = terms(query);
+        int total = Math.max(1, current.documents.size());
+        int[][] lists = new int[Math.min(queryTerms.size(), MAX_QUERY_TERMS) * fields.size()][];
+        double[] weights = new double[lists.length];
+        int size = 0;
+        double maxScore = 0;
+        for (String term : queryTerms.stream().limit(MAX_QUERY_TERMS).toList()) {
+            for (FilmSearchField field : fields) {
+                int[] films = current.postings.get(field).get(term);
+                if (films != null) {
+                    lists[size] = films;
+                    weights[size] = (field == FilmSearchField.TITLE ? 2.0 : 1.0)
+                            * Math.log(1 + (double) total / films.length);
+                    maxScore += weights[size++];
+                }
+            }
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(count + 1, HIT_ORDER);
+        int[] positions = new int[size];
+        while (true) {
+            int filmId = Integer.MAX_VALUE;
+            boolean found = false;
+            for (int i = 0; i < size; i++) {
+                if (positions[i] < lists[i].length) {
+                    filmId = Math.min(filmId, lists[i][positions[i]]);
+                    found = true;
+                }
+            }
+            if (!found) {
+                break;
+            }
+            double score = 0;
+            for (int i = 0; i < size; i++) {
+                if (positions[i] < lists[i].length && lists[i][positions[i]] == filmId) {
+                    score += weights[i];
+                    positions[i]++;
+                }
+            }
+            Hit hit = new Hit(filmId, score / maxScore + likeWeight * Math.log1p(leaderboard.getLikes((long) filmId)));
+            if (top.size() < count || HIT_ORDER.compare(hit, top.peek()) > 0) {
+                top.add(hit);
+                if (top.size() > count) {
+                    top.poll();
+                }
+            }
+        }
+
+        Long[] ranked = new Long[top.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = (long) top.poll().filmId();
+        }
+        return Arrays.asList(ranked);
+    }
+
+    private static Document document(Film film) {
+        return new Document(terms(film.getName()).toArray(String[]::new),
+                terms(film.getDescription()).toArray(String[]::new));
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(normalize(text.substring(start, i)));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static String normalize(String word) {
+        String folded = word.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        boolean cyrillic = folded.chars()
+                .anyMatch(c -> Character.UnicodeScript.of(c) == Character.UnicodeScript.CYRILLIC);
+        return stem(folded, cyrillic ? RUSSIAN_ENDINGS : ENGLISH_ENDINGS);
+    }
+
+    /**
+     * Strips the longest matching ending. At least three letters are kept after a one-letter ending and four
+     * after a longer one, which keeps short stems such as "герой" and "героя" together.
+     */
+    private static String stem(String word, String[] endings) {
+        for (String ending : endings) {
+            int stemLength = word.length() - ending.length();
+            if (word.endsWith(ending) && stemLength >= (ending.length() == 1 ? 3 : 4)
+                    && !(ending.equals("s") && word.endsWith("ss"))) {
+                return word.substring(0, stemLength);
+            }
+        }
+        return word;
+    }
+
+    private record Document(String[] title, String[] description) {
+        private String[] terms(FilmSearchField field) {
+            return field == FilmSearchField.TITLE ? title : description;
+        }
+    }
+
+    private record Hit(int filmId, double score) {
+    }
+
+    private static class Index {
+        private final ConcurrentHashMap<Integer, Document> documents = new ConcurrentHashMap<>();
+        private final Map<FilmSearchField, ConcurrentHashMap<String, int[]>> postings =
+                new EnumMap<>(FilmSearchField.class);
+
+        private Index() {
+            for (FilmSearchField field : FilmSearchField.values()) {
+                postings.put(field, new ConcurrentHashMap<>());
+            }
+        }
+
+        /**
+         * Adds the film to the postings of its new terms before removing it from the terms it no longer has,
+         * so a search running meanwhile still finds it by the terms that did not change.
+         */
+        private void put(int filmId, Document document) {
+            documents.compute(filmId, (id, previous) -> {
+                for (FilmSearchField field : FilmSearchField.values()) {
+                    Map<String, int[]> fieldPostings = postings.get(field);
+                    String[] updated = document.terms(field);
+                    for (String term : updated) {
+                        fieldPostings.compute(term, (key, films) -> SortedIntArrays.insert(films, id));
+                    }
+                    if (previous != null) {
+                        Set<String> kept = Set.of(updated);
+                        for (String term : previous.terms(field)) {
+                            if (!kept.contains(term)) {
+                                fieldPostings.computeIfPresent(term, (key, films) -> SortedIntArrays.remove(films, id));
+                            }
+                        }
+                    }
+                }
+                return document;
+            });
+        }
+
+        private void remove(int filmId) {
+            documents.computeIfPresent(filmId, (id, previous) -> {
+                for (FilmSearchField field : FilmSearchField.values()) {
+                    for (String term : previous.terms(field)) {
+                        postings.get(field).computeIfPresent(term, (key, films) -> SortedIntArrays.remove(films, id));
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    private static class IdBuffer {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
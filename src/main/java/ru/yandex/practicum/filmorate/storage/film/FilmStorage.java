@@ -1,32 +1,55 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Film create(Film film);
 
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     Film delete(Long filmId);
 
     Optional<Film> findById(Long filmId);
 
-    Optional<MPA> findMPAById(Long mpaId);
+    List<Film> findByIds(List<Long> filmIds);
+
+    boolean existsById(Long filmId);
 
-    Optional<Genre> findGenreById(Long genreId);
+    boolean existAll(Collection<Long> filmIds);
 
-    List<Long> findUnknownFilmGenres(List<Genre> genres);
+    Set<Long> findExistingIds(Collection<Long> filmIds);
 
     List<Film> findAll();
 
+    List<Film> findPage(Long afterId, int limit);
+
+    void streamAll(Consumer<Film> consumer);
+
     Optional<Film> likeAFilm(Long filmId, Long userId);
 
     Optional<Film> unlikeAFilm(Long filmId, Long userId);
 
-    List<Film> getTopFilms(int count);
+    long saveLike(Long filmId, Long userId);
+
+    long removeLike(Long filmId, Long userId);
+
+    boolean[] applyLikes(List<LikeEvent> events);
+
+    int repairLikeCounts();
+
+    List<Film> getTopFilms(int count, Long genreId, Integer year);
+
+    List<Film> getRecommendations(Long userId, int count);
+
+    List<Film> search(String query, Set<FilmSearchField> fields, int count);
 }
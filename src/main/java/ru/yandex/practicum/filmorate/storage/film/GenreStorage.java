@@ -15,11 +15,12 @@ public class GenreStorage extends BaseDbStorage<Genre> {
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM genres WHERE id = ?";
 
     public GenreStorage(JdbcTemplate jdbc, RowMapper<Genre> mapper) {
-        super(jdbc, mapper, Genre.class);
+        super(jdbc, mapper);
     }
 
     public Optional<Genre> findById(Long genreId) {
         return findOne(
+                "findById",
                 FIND_BY_ID_QUERY,
                 genreId
         );
@@ -27,6 +28,7 @@ public class GenreStorage extends BaseDbStorage<Genre> {
 
     public List<Genre> findAll() {
         return findMany(
+                "findAll",
                 FIND_ALL_QUERY
         );
     }
@@ -0,0 +1,245 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.event.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.SortedIntArrays;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory copy of film_likes used for user-based collaborative filtering. The matrix is held twice, as
+ * films liked by each user and users who liked each film, both as sorted {@code int[]}. A like costs eight
+ * bytes plus the per-user and per-film array and map entry overhead, so the footprint grows with the number
+ * of likes, not with users × films.
+ *
+ * <p>Like {@link ru.yandex.practicum.filmorate.storage.user.FriendGraph}, arrays are replaced inside
+ * {@link ConcurrentHashMap#compute} and never modified in place.
+ */
+@Slf4j
+@Component
+public class LikeMatrix {
+    private static final String FIND_ALL_LIKES = "SELECT film_id, user_id FROM film_likes";
+    private static final int PARALLEL_THRESHOLD = 10_000;
+
+    private final JdbcTemplate jdbc;
+    private final int neighbours;
+    private final int maxLikersPerFilm;
+    private volatile Matrix matrix = new Matrix();
+
+    public LikeMatrix(JdbcTemplate jdbc,
+                      @Value("${filmorate.recommendations.neighbours:50}") int neighbours,
+                      @Value("${filmorate.recommendations.max-likers-per-film:5000}") int maxLikersPerFilm) {
+        this.jdbc = jdbc;
+        this.neighbours = neighbours;
+        this.maxLikersPerFilm = maxLikersPerFilm;
+    }
+
+    public void rebuild() {
+        IntBuffer filmIds = new IntBuffer();
+        IntBuffer userIds = new IntBuffer();
+        jdbc.query(FIND_ALL_LIKES, (RowCallbackHandler) rs -> {
+            filmIds.add(rs.getInt("film_id"));
+            userIds.add(rs.getInt("user_id"));
+        });
+        load(filmIds.values, userIds.values, filmIds.size);
+    }
+
+    /**
+     * Replaces the matrix with {@code count} (film, user) pairs given in any order.
+     */
+    public void load(int[] filmIds, int[] userIds, int count) {
+        long[] pairs = new long[count];
+        for (int i = 0; i < count; i++) {
+            pairs[i] = pack(userIds[i], filmIds[i]);
+        }
+        Matrix loaded = new Matrix();
+        group(pairs, loaded.filmsByUser);
+        for (int i = 0; i < count; i++) {
+            pairs[i] = pack(filmIds[i], userIds[i]);
+        }
+        group(pairs, loaded.usersByFilm);
+        matrix = loaded;
+        log.debug("like matrix rebuilt, users = {}, films = {}, likes = {}",
+                loaded.filmsByUser.size(), loaded.usersByFilm.size(), count);
+    }
+
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        Matrix current = matrix;
+        int user = Math.toIntExact(event.getUserId());
+        int[] films = current.filmsByUser.remove(user);
+        if (films != null) {
+            for (int film : films) {
+                current.usersByFilm.computeIfPresent(film, (id, users) -> SortedIntArrays.remove(users, user));
+            }
+        }
+    }
+
+    public void like(Long filmId, Long userId) {
+        Matrix current = matrix;
+        int film = Math.toIntExact(filmId);
+        int user = Math.toIntExact(userId);
+        current.filmsByUser.compute(user, (id, films) -> SortedIntArrays.insert(films, film));
+        current.usersByFilm.compute(film, (id, users) -> SortedIntArrays.insert(users, user));
+    }
+
+    public void unlike(Long filmId, Long userId) {
+        Matrix current = matrix;
+        int film = Math.toIntExact(filmId);
+        int user = Math.toIntExact(userId);
+        current.filmsByUser.computeIfPresent(user, (id, films) -> SortedIntArrays.remove(films, film));
+        current.usersByFilm.computeIfPresent(film, (id, users) -> SortedIntArrays.remove(users, user));
+    }
+
+    public void removeFilm(Long filmId) {
+        Matrix current = matrix;
+        int film = Math.toIntExact(filmId);
+        int[] users = current.usersByFilm.remove(film);
+        if (users != null) {
+            for (int user : users) {
+                current.filmsByUser.computeIfPresent(user, (id, films) -> SortedIntArrays.remove(films, film));
+            }
+        }
+    }
+
+    /**
+     * Recommends up to {@code count} films the user has not liked. Users who liked at least one of the same
+     * films are scored by cosine similarity of their likes; films liked by the {@code neighbours} most similar
+     * users are ranked by the summed similarity of those users, then by id.
+     *
+     * <p>Counting shared likes sorts one entry per (liked film, other liker) pair and scoring runs once per
+     * candidate user; both run on the common fork/join pool when there are many candidates. Films liked by more
+     * than {@code maxLikersPerFilm} users contribute an evenly spaced sample of their likers, which bounds the
+     * work per request regardless of how popular the user's films are.
+     */
+    public List<Long> recommend(Long userId, int count) {
+        Matrix current = matrix;
+        int user = Math.toIntExact(userId);
+        int[] liked = current.filmsByUser.getOrDefault(user, SortedIntArrays.EMPTY);
+        if (liked.length == 0) {
+            return List.of();
+        }
+
+        int total = 0;
+        int[][] likers = new int[liked.length][];
+        for (int i = 0; i < liked.length; i++) {
+            likers[i] = current.usersByFilm.getOrDefault(liked[i], SortedIntArrays.EMPTY);
+            total += Math.min(likers[i].length, maxLikersPerFilm);
+        }
+        int[] others = new int[total];
+        int size = 0;
+        for (int[] filmLikers : likers) {
+            int sampled = Math.min(filmLikers.length, maxLikersPerFilm);
+            for (int k = 0; k < sampled; k++) {
+                int other = filmLikers[(int) ((long) k * filmLikers.length / sampled)];
+                if (other != user) {
+                    others[size++] = other;
+                }
+            }
+        }
+        if (size >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(others, 0, size);
+        } else {
+            Arrays.sort(others, 0, size);
+        }
+
+        int[] candidates = new int[size];
+        int[] shared = new int[size];
+        int candidateCount = 0;
+        for (int start = 0; start < size; ) {
+            int end = start + 1;
+            while (end < size && others[end] == others[start]) {
+                end++;
+            }
+            candidates[candidateCount] = others[start];
+            shared[candidateCount++] = end - start;
+            start = end;
+        }
+
+        double[] similarity = new double[candidateCount];
+        IntStream indexes = IntStream.range(0, candidateCount);
+        if (candidateCount >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> similarity[i] = shared[i] / Math.sqrt(Math.max(1,
+                current.filmsByUser.getOrDefault(candidates[i], SortedIntArrays.EMPTY).length)));
+
+        PriorityQueue<Integer> nearest = new PriorityQueue<>(neighbours + 1,
+                Comparator.<Integer>comparingDouble(i -> similarity[i]).thenComparing(i -> -candidates[i]));
+        for (int i = 0; i < candidateCount; i++) {
+            nearest.add(i);
+            if (nearest.size() > neighbours) {
+                nearest.poll();
+            }
+        }
+
+        Map<Integer, Double> scores = new HashMap<>();
+        for (int i : nearest) {
+            for (int film : current.filmsByUser.getOrDefault(candidates[i], SortedIntArrays.EMPTY)) {
+                if (Arrays.binarySearch(liked, film) < 0) {
+                    scores.merge(film, similarity[i], Double::sum);
+                }
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(entry -> (long) entry.getKey())
+                .toList();
+    }
+
+    private static long pack(int key, int value) {
+        return ((long) key << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private static void group(long[] pairs, Map<Integer, int[]> target) {
+        Arrays.parallelSort(pairs);
+        for (int start = 0; start < pairs.length; ) {
+            int key = (int) (pairs[start] >>> 32);
+            int end = start;
+            while (end < pairs.length && (int) (pairs[end] >>> 32) == key) {
+                end++;
+            }
+            int[] values = new int[end - start];
+            int size = 0;
+            for (int i = start; i < end; i++) {
+                int value = (int) pairs[i];
+                if (size == 0 || values[size - 1] != value) {
+                    values[size++] = value;
+                }
+            }
+            target.put(key, size == values.length ? values : Arrays.copyOf(values, size));
+            start = end;
+        }
+    }
+
+    private static class Matrix {
+        private final ConcurrentHashMap<Integer, int[]> filmsByUser = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Integer, int[]> usersByFilm = new ConcurrentHashMap<>();
+    }
+
+    private static class IntBuffer {
+        private int[] values = new int[1024];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional write-behind buffer for likes. Operations are acknowledged once buffered; the last operation
+ * for each (film, user) pair wins and the buffer is flushed through {@link FilmStorage#applyLikes} every
+ * {@code flush-interval}, which bounds how much an unclean shutdown can lose.
+ *
+ * <p>When {@code capacity} pairs are pending the submitting thread flushes the buffer itself, so callers
+ * slow down to the speed of batched writes instead of growing the buffer. Operations being flushed stay
+ * visible to {@link #overlay} until they are written.
+ *
+ * <p>Every film returned by the API goes through {@link #overlay}, so its likes are always current. Popular
+ * films, search and recommendations are ranked from written likes only and catch up within one flush.
+ */
+@Slf4j
+@Component
+public class LikeWriteBehind {
+    private static final int FLUSH_CHUNK_SIZE = 1000;
+
+    private final FilmStorage filmStorage;
+    private final boolean enabled;
+    private final int capacity;
+    private final Duration flushInterval;
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile Map<Long, Map<Long, LikeOperation>> pending = new ConcurrentHashMap<>();
+    private volatile Map<Long, Map<Long, LikeOperation>> flushing = Map.of();
+    private ScheduledExecutorService scheduler;
+
+    public LikeWriteBehind(@Qualifier("cachedFilmStorage") FilmStorage filmStorage,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.capacity:100000}") int capacity,
+                           @Value("${filmorate.likes.write-behind.flush-interval:200ms}") Duration flushInterval) {
+        this.filmStorage = filmStorage;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.flushInterval = flushInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("like-write-behind").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        log.info("like write-behind enabled, capacity = {}, flush interval = {}", capacity, flushInterval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            flush();
+        }
+    }
+
+    @Autowired(required = false)
+    public void bindMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("filmorate.likes.pending", size, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPendingCount() {
+        return size.get();
+    }
+
+    public void submit(Long filmId, Long userId, LikeOperation op) {
+        while (true) {
+            swapLock.readLock().lock();
+            try {
+                Map<Long, LikeOperation> filmOps = pending.computeIfAbsent(filmId, id -> new ConcurrentHashMap<>());
+                if (size.get() < capacity || filmOps.containsKey(userId)) {
+                    if (filmOps.put(userId, op) == null) {
+                        size.incrementAndGet();
+                    }
+                    return;
+                }
+            } finally {
+                swapLock.readLock().unlock();
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Returns the film with buffered operations applied. {@code pending} is read before {@code flushing} and
+     * {@link #flush} publishes {@code flushing} before replacing {@code pending}, so an operation being swapped
+     * over is seen in at least one of them.
+     */
+    public Film overlay(Film film) {
+        Map<Long, LikeOperation> pendingOps = pending.get(film.getId());
+        Map<Long, LikeOperation> flushingOps = flushing.get(film.getId());
+        if ((flushingOps == null || flushingOps.isEmpty()) && (pendingOps == null || pendingOps.isEmpty())) {
+            return film;
+        }
+        Film copy = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getMpa());
+        copy.getGenres().addAll(film.getGenres());
+        copy.getLikes().addAll(film.getLikes());
+        applyTo(copy, flushingOps);
+        applyTo(copy, pendingOps);
+        return copy;
+    }
+
+    public synchronized void flush() {
+        Map<Long, Map<Long, LikeOperation>> batch;
+        swapLock.writeLock().lock();
+        try {
+            batch = pending;
+            flushing = batch;
+            pending = new ConcurrentHashMap<>();
+            size.set(0);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        List<LikeEvent> events = new ArrayList<>();
+        batch.forEach((filmId, filmOps) ->
+                filmOps.forEach((userId, op) -> events.add(new LikeEvent(filmId, userId, op))));
+        for (int from = 0; from < events.size(); from += FLUSH_CHUNK_SIZE) {
+            apply(events.subList(from, Math.min(from + FLUSH_CHUNK_SIZE, events.size())));
+        }
+        flushing = Map.of();
+        if (!events.isEmpty()) {
+            log.debug("flushed {} like operations", events.size());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("like write-behind flush failed", e);
+        }
+    }
+
+    private void apply(List<LikeEvent> chunk) {
+        try {
+            filmStorage.applyLikes(chunk);
+        } catch (DataAccessException e) {
+            log.warn("like batch of {} failed, applying one by one: {}", chunk.size(), e.getMessage());
+            for (LikeEvent event : chunk) {
+                try {
+                    filmStorage.applyLikes(List.of(event));
+                } catch (DataAccessException eventFailure) {
+                    log.error("dropped like operation {}: {}", event, eventFailure.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void applyTo(Film film, Map<Long, LikeOperation> ops) {
+        if (ops == null) {
+            return;
+        }
+        ops.forEach((userId, op) -> {
+            if (op == LikeOperation.LIKE) {
+                film.getLikes().add(userId);
+            } else {
+                film.getLikes().remove(userId);
+            }
+        });
+    }
+}
@@ -15,11 +15,12 @@ public class MPAStorage extends BaseDbStorage<MPA> {
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM mpa WHERE id = ?";
 
     public MPAStorage(JdbcTemplate jdbc, RowMapper<MPA> mapper) {
-        super(jdbc, mapper, MPA.class);
+        super(jdbc, mapper);
     }
 
     public Optional<MPA> findById(Long mpaId) {
         return findOne(
+                "findById",
                 FIND_BY_ID_QUERY,
                 mpaId
         );
@@ -27,6 +28,7 @@ public class MPAStorage extends BaseDbStorage<MPA> {
 
     public List<MPA> findAll() {
         return findMany(
+                "findAll",
                 FIND_ALL_QUERY
         );
     }
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Immutable snapshot of the genres and MPA ratings, indexed by id.
+ *
+ * <p>Both tables are tiny and change only with the schema, so they are read once at startup;
+ * {@link #refresh()} reloads them when the tables are edited.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceCache {
+    private final GenreStorage genreStorage;
+    private final MPAStorage mpaStorage;
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void refresh() {
+        List<Genre> genres = List.copyOf(genreStorage.findAll());
+        List<MPA> mpa = List.copyOf(mpaStorage.findAll());
+        snapshot = new Snapshot(genres, index(genres, Genre::getId, Genre[]::new),
+                mpa, index(mpa, MPA::getId, MPA[]::new));
+        log.debug("reference cache loaded, genres = {}, MPA ratings = {}", genres.size(), mpa.size());
+    }
+
+    public List<Genre> getGenres() {
+        return snapshot.genres();
+    }
+
+    public Optional<Genre> findGenreById(Long genreId) {
+        return Optional.ofNullable(lookup(snapshot.genresById(), genreId));
+    }
+
+    public List<Long> findUnknownGenres(Collection<Genre> genres) {
+        Genre[] genresById = snapshot.genresById();
+        return genres.stream()
+                .map(Genre::getId)
+                .filter(genreId -> lookup(genresById, genreId) == null)
+                .distinct()
+                .toList();
+    }
+
+    public List<MPA> getMpa() {
+        return snapshot.mpa();
+    }
+
+    public Optional<MPA> findMpaById(Long mpaId) {
+        return Optional.ofNullable(lookup(snapshot.mpaById(), mpaId));
+    }
+
+    private static <T> T lookup(T[] byId, Long id) {
+        if (id == null || id < 0 || id >= byId.length) {
+            return null;
+        }
+        return byId[id.intValue()];
+    }
+
+    private static <T> T[] index(List<T> values, Function<T, Long> idGetter, IntFunction<T[]> arrayFactory) {
+        int size = values.stream()
+                .mapToInt(value -> idGetter.apply(value).intValue() + 1)
+                .max()
+                .orElse(0);
+        T[] byId = arrayFactory.apply(size);
+        values.forEach(value -> byId[idGetter.apply(value).intValue()] = value);
+        return byId;
+    }
+
+    private record Snapshot(List<Genre> genres, Genre[] genresById, List<MPA> mpa, MPA[] mpaById) {
+    }
+}
@@ -23,8 +23,10 @@ public class FilmRowMapper implements RowMapper<Film> {
         }
         film.setDuration(rs.getInt("duration"));
 
-        MPA mpa = new MPA();
-        mpa.setId(rs.getLong("mpa_id"));
+        long mpaId = rs.getLong("mpa_id");
+        if (!rs.wasNull()) {
+            film.setMpa(new MPA(mpaId, rs.getString("mpa_name")));
+        }
 
         return film;
     }
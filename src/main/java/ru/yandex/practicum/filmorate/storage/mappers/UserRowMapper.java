@@ -19,7 +19,9 @@ public class UserRowMapper implements RowMapper<User> {
         user.setName(rs.getString("name"));
 
         Date birthday = rs.getDate("birthday");
-        user.setBirthday(birthday.toLocalDate());
+        if (birthday != null) {
+            user.setBirthday(birthday.toLocalDate());
+        }
 
         return user;
     }
@@ -0,0 +1,189 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.FriendshipEdge;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache in front of {@link UserDbStorage#findById}; writes evict the users they touch.
+ *
+ * <p>Only unexpanded users are cached, expanded lookups always go to the delegate. Common friends and
+ * suggestions are taken from the {@link FriendGraph} and hydrated through the cache, so only missing users
+ * are loaded, in one query.
+ */
+@Repository
+@Qualifier("cachedUserStorage")
+public class CachedUserStorage implements UserStorage {
+    private final UserStorage delegate;
+    private final Cache<Long, User> cache;
+    private final FriendGraph friendGraph;
+
+    public CachedUserStorage(@Qualifier("userDbStorage") UserStorage delegate,
+                             @Value("${filmorate.cache.users.maximum-size:10000}") long maximumSize,
+                             @Value("${filmorate.cache.users.expire-after-write:10m}") Duration expireAfterWrite,
+                             FriendGraph friendGraph) {
+        this.delegate = delegate;
+        this.friendGraph = friendGraph;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Autowired(required = false)
+    public void bindMetrics(MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "users");
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public User create(User user) {
+        return delegate.create(user);
+    }
+
+    @Override
+    public List<User> createAll(List<User> users) {
+        return delegate.createAll(users);
+    }
+
+    @Override
+    public User update(User user) {
+        User updated = delegate.update(user);
+        cache.invalidate(user.getId());
+        return updated;
+    }
+
+    @Override
+    public User delete(Long userId) {
+        User deleted = delegate.delete(userId);
+        cache.invalidate(userId);
+        return deleted;
+    }
+
+    @Override
+    public Optional<User> findById(Long userId) {
+        return Optional.ofNullable(cache.get(userId, id -> delegate.findById(id).orElse(null)));
+    }
+
+    @Override
+    public Optional<User> findById(Long userId, Set<UserExpansion> expansions) {
+        if (expansions.isEmpty()) {
+            return findById(userId);
+        }
+        return delegate.findById(userId, expansions);
+    }
+
+    @Override
+    public List<User> findByIds(List<Long> userIds) {
+        Map<Long, User> usersById = cache.getAll(userIds, missing -> {
+            Map<Long, User> loaded = new HashMap<>();
+            delegate.findByIds(List.copyOf(missing)).forEach(user -> loaded.put(user.getId(), user));
+            return loaded;
+        });
+        return userIds.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public boolean existsById(Long userId) {
+        return cache.getIfPresent(userId) != null || delegate.existsById(userId);
+    }
+
+    @Override
+    public boolean existAll(Collection<Long> userIds) {
+        return delegate.existAll(userIds);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> userIds) {
+        return delegate.findExistingIds(userIds);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        delegate.streamAll(consumer);
+    }
+
+    @Override
+    public User addFriend(Long userId, Long friendId) {
+        return delegate.addFriend(userId, friendId);
+    }
+
+    @Override
+    public User deleteFriend(Long userId, Long friendId) {
+        return delegate.deleteFriend(userId, friendId);
+    }
+
+    @Override
+    public void saveFriend(Long userId, Long friendId) {
+        delegate.saveFriend(userId, friendId);
+    }
+
+    @Override
+    public void removeFriend(Long userId, Long friendId) {
+        delegate.removeFriend(userId, friendId);
+    }
+
+    @Override
+    public void addFriends(List<FriendshipEdge> edges) {
+        delegate.addFriends(edges);
+    }
+
+    @Override
+    public void deleteFriends(List<FriendshipEdge> edges) {
+        delegate.deleteFriends(edges);
+    }
+
+    @Override
+    public List<User> getFriends(Long userId) {
+        return delegate.getFriends(userId);
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long userId1, Long userId2) {
+        return findByIds(friendGraph.getCommonFriends(userId1, userId2));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(Long userId, int limit) {
+        return findByIds(friendGraph.getSuggestions(userId, limit));
+    }
+}
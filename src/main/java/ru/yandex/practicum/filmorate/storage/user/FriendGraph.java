@@ -0,0 +1,183 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FriendshipEdge;
+import ru.yandex.practicum.filmorate.storage.SortedIntArrays;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the friends table: every user's friends are kept as a sorted {@code int[]}, so common
+ * friends and friend-of-friend suggestions are computed without touching the database.
+ *
+ * <p>Arrays are never modified in place. A change builds a new array inside
+ * {@link ConcurrentHashMap#compute}, so readers always see a consistent friend list without locking.
+ * Friendship is one-way, so the users who added someone are kept in a second map, and removing a user only
+ * touches the lists that contain them.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FriendGraph {
+    private static final String FIND_ALL_FRIENDS = "SELECT user_id, friend_id FROM friends ORDER BY user_id, friend_id";
+    private static final String FIND_ALL_FOLLOWERS =
+            "SELECT friend_id, user_id FROM friends ORDER BY friend_id, user_id";
+
+    private final JdbcTemplate jdbc;
+    private volatile ConcurrentHashMap<Integer, int[]> adjacency = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<Integer, int[]> followers = new ConcurrentHashMap<>();
+
+    public void rebuild() {
+        ConcurrentHashMap<Integer, int[]> rebuiltFriends = load(FIND_ALL_FRIENDS, "user_id", "friend_id");
+        ConcurrentHashMap<Integer, int[]> rebuiltFollowers = load(FIND_ALL_FOLLOWERS, "friend_id", "user_id");
+        adjacency = rebuiltFriends;
+        followers = rebuiltFollowers;
+        log.debug("friend graph rebuilt, users with friends = {}", rebuiltFriends.size());
+    }
+
+    public void addFriend(Long userId, Long friendId) {
+        int user = Math.toIntExact(userId);
+        int friend = Math.toIntExact(friendId);
+        adjacency.compute(user, (id, friends) -> SortedIntArrays.insert(friends, friend));
+        followers.compute(friend, (id, users) -> SortedIntArrays.insert(users, user));
+    }
+
+    public void removeFriend(Long userId, Long friendId) {
+        int user = Math.toIntExact(userId);
+        int friend = Math.toIntExact(friendId);
+        adjacency.computeIfPresent(user, (id, friends) -> SortedIntArrays.remove(friends, friend));
+        followers.computeIfPresent(friend, (id, users) -> SortedIntArrays.remove(users, user));
+    }
+
+    public void addFriends(Collection<FriendshipEdge> edges) {
+        edges.forEach(edge -> addFriend(edge.getUserId(), edge.getFriendId()));
+    }
+
+    public void removeFriends(Collection<FriendshipEdge> edges) {
+        edges.forEach(edge -> removeFriend(edge.getUserId(), edge.getFriendId()));
+    }
+
+    public void removeUser(Long userId) {
+        int user = Math.toIntExact(userId);
+        int[] friends = adjacency.remove(user);
+        int[] addedBy = followers.remove(user);
+        if (friends != null) {
+            for (int friend : friends) {
+                followers.computeIfPresent(friend, (id, users) -> SortedIntArrays.remove(users, user));
+            }
+        }
+        if (addedBy != null) {
+            for (int follower : addedBy) {
+                adjacency.computeIfPresent(follower, (id, list) -> SortedIntArrays.remove(list, user));
+            }
+        }
+    }
+
+    public int[] getFriends(Long userId) {
+        return adjacency.getOrDefault(Math.toIntExact(userId), SortedIntArrays.EMPTY);
+    }
+
+    public List<Long> getCommonFriends(Long userId1, Long userId2) {
+        int[] common = SortedIntArrays.intersect(getFriends(userId1), getFriends(userId2));
+        List<Long> ids = new ArrayList<>(common.length);
+        for (int id : common) {
+            ids.add((long) id);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns up to {@code limit} friends of the user's friends that are not yet the user's friends, ordered by
+     * the number of mutual friends and then by id.
+     */
+    public List<Long> getSuggestions(Long userId, int limit) {
+        int user = Math.toIntExact(userId);
+        int[] friends = getFriends(userId);
+        int total = 0;
+        int[][] friendsOfFriends = new int[friends.length][];
+        for (int i = 0; i < friends.length; i++) {
+            friendsOfFriends[i] = adjacency.getOrDefault(friends[i], SortedIntArrays.EMPTY);
+            total += friendsOfFriends[i].length;
+        }
+
+        int[] candidates = new int[total];
+        int size = 0;
+        for (int[] list : friendsOfFriends) {
+            for (int candidate : list) {
+                if (candidate != user && Arrays.binarySearch(friends, candidate) < 0) {
+                    candidates[size++] = candidate;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, size);
+
+        PriorityQueue<Long> top = new PriorityQueue<>(limit + 1);
+        for (int start = 0; start < size; ) {
+            int end = start + 1;
+            while (end < size && candidates[end] == candidates[start]) {
+                end++;
+            }
+            top.add(rank(end - start, candidates[start]));
+            if (top.size() > limit) {
+                top.poll();
+            }
+            start = end;
+        }
+
+        Long[] ranked = new Long[top.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = (long) (Integer.MAX_VALUE - (int) (top.poll() & 0xFFFFFFFFL));
+        }
+        return Arrays.asList(ranked);
+    }
+
+    private ConcurrentHashMap<Integer, int[]> load(String query, String keyColumn, String valueColumn) {
+        ConcurrentHashMap<Integer, int[]> loaded = new ConcurrentHashMap<>();
+        Loader loader = new Loader(loaded);
+        jdbc.query(query, (RowCallbackHandler) rs -> loader.add(rs.getInt(keyColumn), rs.getInt(valueColumn)));
+        loader.finish();
+        return loaded;
+    }
+
+    private static long rank(int mutualFriends, int candidate) {
+        return ((long) mutualFriends << 32) | (Integer.MAX_VALUE - candidate);
+    }
+
+    private static class Loader {
+        private final ConcurrentHashMap<Integer, int[]> target;
+        private int userId = -1;
+        private int[] friends = new int[16];
+        private int size;
+
+        private Loader(ConcurrentHashMap<Integer, int[]> target) {
+            this.target = target;
+        }
+
+        private void add(int user, int friend) {
+            if (user != userId) {
+                finish();
+                userId = user;
+            }
+            if (size == friends.length) {
+                friends = Arrays.copyOf(friends, size * 2);
+            }
+            friends[size++] = friend;
+        }
+
+        private void finish() {
+            if (size > 0) {
+                target.put(userId, Arrays.copyOf(friends, size));
+            }
+            size = 0;
+        }
+    }
+}
@@ -1,47 +1,76 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.FriendshipEdge;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.BaseDbStorage;
 import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
 import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
 
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Repository
 @Qualifier("userDbStorage")
 public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     private static final String FIND_ALL_QUERY = "SELECT * FROM users";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String STREAM_ALL_QUERY = "SELECT * FROM users ORDER BY id";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM users WHERE id = ?";
+    private static final String EXISTS_BY_ID_QUERY = "SELECT EXISTS (SELECT 1 FROM users WHERE id = ?)";
+    private static final String COUNT_BY_IDS_QUERY = "SELECT COUNT(*) FROM users WHERE id = ANY(?)";
+    private static final String FIND_BY_IDS_QUERY = "SELECT * FROM users WHERE id = ANY(?)";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT u.id FROM users u " +
+            "JOIN UNNEST(?) AS ids(id) ON u.id = ids.id";
     private static final String FIND_FRIENDS_BY_ID = "SELECT * FROM users WHERE id " +
             "IN (SELECT friend_id FROM friends WHERE user_id = ?)";
-    private static final String FIND_FAVORITES_BY_ID = "SELECT * FROM films WHERE id " +
-            "IN (SELECT film_id FROM film_likes WHERE user_id = ?)";
+    private static final String FIND_FAVORITES_BY_ID = "SELECT f.*, m.name AS mpa_name FROM films f " +
+            "LEFT OUTER JOIN mpa m ON f.mpa_id = m.id " +
+            "WHERE f.id IN (SELECT film_id FROM film_likes WHERE user_id = ?)";
     private static final String INSERT_QUERY = "INSERT INTO users (email, login, name, birthday) " +
             "VALUES (?, ?, ?, ?)";
     private static final String UPDATE_QUERY = "UPDATE users SET login = ?, name = ?, birthday = ? " +
             "WHERE id = ?";
     private static final String DELETE_QUERY = "DELETE FROM users WHERE id = ?";
-    private static final String ADD_FRIEND_SQL = "INSERT INTO friends (user_id, friend_id) VALUES (?, ?)";
+    private static final String RELEASE_LIKES_QUERY = "UPDATE films SET like_count = like_count - 1 " +
+            "WHERE id IN (SELECT film_id FROM film_likes WHERE user_id = ?)";
+    private static final String ADD_FRIEND_SQL = "INSERT INTO friends (user_id, friend_id) " +
+            "SELECT ?, ? FROM DUAL " +
+            "WHERE NOT EXISTS (SELECT 1 FROM friends WHERE user_id = ? AND friend_id = ?)";
     private static final String REMOVE_FRIEND_SQL = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
     private static final String GET_FRIENDS_SQL = "SELECT * FROM users WHERE id " +
             "IN (SELECT friend_id FROM friends WHERE user_id = ?)";
-    private static final String GET_COMMON_FRIENDS_SQL = "SELECT * FROM users u " +
-            "JOIN friends f1 ON u.id = f1.friend_id " +
-            "JOIN friends f2 ON u.id = f2.friend_id " +
-            "WHERE f1.user_id = ? AND f2.user_id = ?";
 
-    public UserDbStorage(JdbcTemplate jdbc, RowMapper<User> mapper) {
-        super(jdbc, mapper, User.class);
+    private final FriendGraph friendGraph;
+
+    public UserDbStorage(JdbcTemplate jdbc, RowMapper<User> mapper, FriendGraph friendGraph) {
+        super(jdbc, mapper);
+        this.friendGraph = friendGraph;
+    }
+
+    @PostConstruct
+    public void init() {
+        timedRebuild("rebuildFriendGraph", friendGraph::rebuild);
     }
 
     @Override
     public User create(User user) {
         Long lastId = insert(
+                "insert",
                 INSERT_QUERY,
                 user.getEmail(),
                 user.getLogin(),
@@ -52,9 +81,26 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         return user;
     }
 
+    @Override
+    @Transactional
+    public List<User> createAll(List<User> users) {
+        List<Long> ids = insertAll(
+                "insert",
+                INSERT_QUERY,
+                users.stream()
+                        .map(user -> new Object[]{user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()})
+                        .toList()
+        );
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(ids.get(i));
+        }
+        return users;
+    }
+
     @Override
     public User update(User user) {
         update(
+                "update",
                 UPDATE_QUERY,
                 user.getLogin(),
                 user.getName(),
@@ -65,58 +111,164 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     }
 
     @Override
+    @Transactional
     public User delete(Long userId) {
         User user = findById(userId).get();
+        getReferences(user, Set.of(UserExpansion.FAVORITES));
+        timed("releaseLikes", "update", () -> jdbc.update(RELEASE_LIKES_QUERY, userId));
         delete(
+                "delete",
                 DELETE_QUERY,
                 userId
         );
+        afterCommit(() -> friendGraph.removeUser(userId));
         return user;
     }
 
     @Override
     public Optional<User> findById(Long userId) {
-        Optional<User> user = findOne(
+        return findOne(
+                "findById",
                 FIND_BY_ID_QUERY,
                 userId
         );
-        user.ifPresent(this::getReferences);
+    }
+
+    @Override
+    public Optional<User> findById(Long userId, Set<UserExpansion> expansions) {
+        Optional<User> user = findById(userId);
+        user.ifPresent(value -> getReferences(value, expansions));
         return user;
     }
 
+    @Override
+    public List<User> findByIds(List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, User> usersById = new HashMap<>();
+        findMany("findByIds", FIND_BY_IDS_QUERY, (Object) userIds.toArray(new Long[0]))
+                .forEach(user -> usersById.put(user.getId(), user));
+        return userIds.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public boolean existsById(Long userId) {
+        return Boolean.TRUE.equals(timed("existsById", "exists",
+                () -> jdbc.queryForObject(EXISTS_BY_ID_QUERY, Boolean.class, userId)));
+    }
+
+    @Override
+    public boolean existAll(Collection<Long> userIds) {
+        Long[] distinctIds = userIds.stream().distinct().toArray(Long[]::new);
+        Integer found = timed("countByIds", "exists",
+                () -> jdbc.queryForObject(COUNT_BY_IDS_QUERY, Integer.class, (Object) distinctIds));
+        return found != null && found == distinctIds.length;
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> userIds) {
+        Long[] distinctIds = userIds.stream().distinct().toArray(Long[]::new);
+        return new HashSet<>(timed("findExistingIds", "exists",
+                () -> jdbc.queryForList(FIND_EXISTING_IDS_QUERY, Long.class, (Object) distinctIds)));
+    }
+
     @Override
     public List<User> findAll() {
         return findMany(
+                "findAll",
                 FIND_ALL_QUERY
         );
     }
 
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return findMany(
+                "findPage",
+                FIND_PAGE_QUERY,
+                afterId,
+                limit
+        );
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        timed("streamAll", "findMany", () -> {
+            jdbc.query(STREAM_ALL_QUERY, (RowCallbackHandler) rs -> consumer.accept(mapper.mapRow(rs, rs.getRow())));
+            return null;
+        });
+    }
+
     @Override
     public User addFriend(Long userId, Long friendId) {
-        update(ADD_FRIEND_SQL, userId, friendId);
-        return findById(userId).get();
+        saveFriend(userId, friendId);
+        return findById(userId, EnumSet.allOf(UserExpansion.class)).get();
     }
 
     @Override
     public User deleteFriend(Long userId, Long friendId) {
-        delete(REMOVE_FRIEND_SQL, userId, friendId);
-        return findById(userId).get();
+        removeFriend(userId, friendId);
+        return findById(userId, EnumSet.allOf(UserExpansion.class)).get();
+    }
+
+    @Override
+    public void saveFriend(Long userId, Long friendId) {
+        timed("addFriend", "insert", () -> jdbc.update(ADD_FRIEND_SQL, userId, friendId, userId, friendId));
+        afterCommit(() -> friendGraph.addFriend(userId, friendId));
+    }
+
+    @Override
+    public void removeFriend(Long userId, Long friendId) {
+        delete("removeFriend", REMOVE_FRIEND_SQL, userId, friendId);
+        afterCommit(() -> friendGraph.removeFriend(userId, friendId));
+    }
+
+    @Override
+    @Transactional
+    public void addFriends(List<FriendshipEdge> edges) {
+        List<Object[]> rows = edges.stream()
+                .map(edge -> new Object[]{edge.getUserId(), edge.getFriendId(), edge.getUserId(), edge.getFriendId()})
+                .toList();
+        timed("addFriend", "insert", () -> jdbc.batchUpdate(ADD_FRIEND_SQL, rows));
+        afterCommit(() -> friendGraph.addFriends(edges));
+    }
+
+    @Override
+    @Transactional
+    public void deleteFriends(List<FriendshipEdge> edges) {
+        List<Object[]> rows = edges.stream()
+                .map(edge -> new Object[]{edge.getUserId(), edge.getFriendId()})
+                .toList();
+        timed("removeFriend", "delete", () -> jdbc.batchUpdate(REMOVE_FRIEND_SQL, rows));
+        afterCommit(() -> friendGraph.removeFriends(edges));
     }
 
     @Override
-    public List<User> getFriends(User user) {
-        return findMany(GET_FRIENDS_SQL, user.getId());
+    public List<User> getFriends(Long userId) {
+        return findMany("getFriends", GET_FRIENDS_SQL, userId);
     }
 
     @Override
     public List<User> getCommonFriends(Long userId1, Long userId2) {
-        return findMany(GET_COMMON_FRIENDS_SQL, userId1, userId2);
+        return findByIds(friendGraph.getCommonFriends(userId1, userId2));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(Long userId, int limit) {
+        return findByIds(friendGraph.getSuggestions(userId, limit));
     }
 
-    protected void getReferences(User user) {
-        if (user.getId() != null) {
-            user.getFriends().addAll(jdbc.query(FIND_FRIENDS_BY_ID, new UserRowMapper(), user.getId()));
-            user.getFavorites().addAll(jdbc.query(FIND_FAVORITES_BY_ID, new FilmRowMapper(), user.getId()));
+    protected void getReferences(User user, Set<UserExpansion> expansions) {
+        if (expansions.contains(UserExpansion.FRIENDS)) {
+            user.getFriends().addAll(timed("findFriendsById", "findMany",
+                    () -> jdbc.query(FIND_FRIENDS_BY_ID, new UserRowMapper(), user.getId())));
+        }
+        if (expansions.contains(UserExpansion.FAVORITES)) {
+            user.getFavorites().addAll(timed("findFavoritesById", "findMany",
+                    () -> jdbc.query(FIND_FAVORITES_BY_ID, new FilmRowMapper(), user.getId())));
         }
     }
 }
@@ -0,0 +1,6 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+public enum UserExpansion {
+    FRIENDS,
+    FAVORITES
+}
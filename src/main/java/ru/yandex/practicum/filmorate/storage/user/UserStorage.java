@@ -1,26 +1,56 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.FriendshipEdge;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     User create(User user);
 
+    List<User> createAll(List<User> users);
+
     User update(User user);
 
     User delete(Long userId);
 
     Optional<User> findById(Long userId);
 
+    Optional<User> findById(Long userId, Set<UserExpansion> expansions);
+
+    List<User> findByIds(List<Long> userIds);
+
+    boolean existsById(Long userId);
+
+    boolean existAll(Collection<Long> userIds);
+
+    Set<Long> findExistingIds(Collection<Long> userIds);
+
     List<User> findAll();
 
+    List<User> findPage(Long afterId, int limit);
+
+    void streamAll(Consumer<User> consumer);
+
     User addFriend(Long userId, Long friendId);
 
     User deleteFriend(Long userId, Long friendId);
 
-    List<User> getFriends(User user);
+    void saveFriend(Long userId, Long friendId);
+
+    void removeFriend(Long userId, Long friendId);
+
+    void addFriends(List<FriendshipEdge> edges);
+
+    void deleteFriends(List<FriendshipEdge> edges);
+
+    List<User> getFriends(Long userId);
 
     List<User> getCommonFriends(Long userId1, Long userId2);
+
+    List<User> getFriendSuggestions(Long userId, int limit);
 }
@@ -36,4 +36,6 @@ INSERT INTO film_likes (user_id, film_id)
 VALUES
     (1, 1),
     (2, 2),
-    (3, 3)
\ No newline at end of file
+    (3, 3);
+
+UPDATE films SET like_count = (SELECT COUNT(*) FROM film_likes WHERE film_id = films.id);
\ No newline at end of file
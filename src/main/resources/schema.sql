@@ -22,7 +22,8 @@ CREATE TABLE IF NOT EXISTS films (
     description varchar(200),
     release_date date NOT NULL,
     duration integer CHECK (duration > 0),
-    mpa_id integer REFERENCES mpa (id) ON DELETE CASCADE
+    mpa_id integer REFERENCES mpa (id) ON DELETE CASCADE,
+    like_count integer DEFAULT 0 NOT NULL
 );
 
 CREATE TABLE IF NOT EXISTS users (
@@ -36,17 +37,24 @@ CREATE TABLE IF NOT EXISTS users (
 CREATE TABLE IF NOT EXISTS film_genres (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     film_id integer REFERENCES films (id) ON DELETE CASCADE NOT NULL,
-    genre_id integer REFERENCES genres (id) ON DELETE CASCADE NOT NULL
+    genre_id integer REFERENCES genres (id) ON DELETE CASCADE NOT NULL,
+    CONSTRAINT film_genres_film_genre_uq UNIQUE (film_id, genre_id)
 );
 
 CREATE TABLE IF NOT EXISTS film_likes (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     user_id integer REFERENCES users (id) ON DELETE CASCADE NOT NULL,
-    film_id integer REFERENCES films (id) ON DELETE CASCADE NOT NULL
+    film_id integer REFERENCES films (id) ON DELETE CASCADE NOT NULL,
+    CONSTRAINT film_likes_film_user_uq UNIQUE (film_id, user_id)
 );
 
+CREATE INDEX IF NOT EXISTS film_likes_user_film_idx ON film_likes (user_id, film_id);
+
 CREATE TABLE IF NOT EXISTS friends (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     user_id integer REFERENCES users (id) ON DELETE CASCADE NOT NULL,
-    friend_id integer REFERENCES users (id) ON DELETE CASCADE NOT NULL
-);
\ No newline at end of file
+    friend_id integer REFERENCES users (id) ON DELETE CASCADE NOT NULL,
+    CONSTRAINT friends_user_friend_uq UNIQUE (user_id, friend_id)
+);
+
+CREATE INDEX IF NOT EXISTS friends_friend_user_idx ON friends (friend_id, user_id);
\ No newline at end of file
@@ -1,33 +1,93 @@
 package ru.yandex.practicum.filmorate;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.event.UserDeletedEvent;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSearchField;
+import ru.yandex.practicum.filmorate.model.FriendshipEdge;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
 import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.SortedIntArrays;
+import ru.yandex.practicum.filmorate.storage.film.CachedFilmStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.MPAStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceCache;
 import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.mappers.MPARowMapper;
 import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.user.CachedUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserExpansion;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({UserRowMapper.class, UserDbStorage.class, FilmRowMapper.class, FilmDbStorage.class})
+@Import({UserRowMapper.class, UserDbStorage.class, FilmRowMapper.class, FilmDbStorage.class, FilmLeaderboard.class,
+        GenreRowMapper.class, GenreStorage.class, MPARowMapper.class, MPAStorage.class, ReferenceCache.class,
+        CachedFilmStorage.class, CachedUserStorage.class, FriendGraph.class, LikeMatrix.class,
+        FilmSearchIndex.class})
 class FilmorateApplicationTests {
+    private static final String TOP_FILMS_SQL = "SELECT f.id FROM films f " +
+            "LEFT OUTER JOIN film_likes fl ON f.id = fl.film_id " +
+            "GROUP BY f.id " +
+            "ORDER BY COUNT(fl.film_id) DESC, f.id " +
+            "LIMIT ?";
+    private static final String LIKE_COUNT_SQL = "SELECT like_count FROM films WHERE id = ?";
+
     private final UserDbStorage userStorage;
     private final FilmDbStorage filmStorage;
+    private final FilmLeaderboard leaderboard;
+    private final MPAStorage mpaStorage;
+    private final GenreStorage genreStorage;
+    private final ReferenceCache referenceCache;
+    private final CachedFilmStorage cachedFilmStorage;
+    private final CachedUserStorage cachedUserStorage;
+    private final FriendGraph friendGraph;
+    private final LikeMatrix likeMatrix;
+    private final FilmSearchIndex searchIndex;
+    private final JdbcTemplate jdbc;
+
+    @BeforeEach
+    public void resetInMemoryState() {
+        cachedFilmStorage.evictAll();
+        cachedUserStorage.evictAll();
+    }
 
     @Test
     public void testCreateUser() {
@@ -98,6 +158,25 @@ class FilmorateApplicationTests {
         assertThat(users).hasSize(3);
     }
 
+    @Test
+    public void testFindUsersPage() {
+        List<User> users = userStorage.findPage(1L, 1);
+
+        assertThat(users)
+                .singleElement()
+                .hasFieldOrPropertyWithValue("id", 2L);
+    }
+
+    @Test
+    public void testStreamAllUsers() {
+        List<User> users = new ArrayList<>();
+        userStorage.streamAll(users::add);
+
+        assertThat(users)
+                .extracting(User::getId)
+                .containsExactly(1L, 2L, 3L);
+    }
+
     @Test
     public void testAddFriend() {
         User friend = userStorage.findById(2L).get();
@@ -133,6 +212,8 @@ class FilmorateApplicationTests {
     }
 
     @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
     public void testGetCommonFriends() {
         User user1 = userStorage.findById(1L).get();
 
@@ -143,6 +224,95 @@ class FilmorateApplicationTests {
         assertThat(commonFriends).containsOnly(user1);
     }
 
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testGetFriendSuggestions() {
+        userStorage.addFriend(1L, 2L);
+        userStorage.addFriend(2L, 3L);
+
+        assertThat(userStorage.getFriendSuggestions(1L, 10)).extracting(User::getId).containsExactly(3L);
+
+        userStorage.addFriend(1L, 3L);
+        assertThat(userStorage.getFriendSuggestions(1L, 10)).isEmpty();
+    }
+
+    @Test
+    public void testFriendGraphRanksSuggestionsByMutualFriends() {
+        FriendGraph graph = new FriendGraph(jdbc);
+        graph.addFriends(List.of(new FriendshipEdge(10L, 20L), new FriendshipEdge(10L, 30L),
+                new FriendshipEdge(20L, 30L), new FriendshipEdge(20L, 40L), new FriendshipEdge(30L, 40L),
+                new FriendshipEdge(30L, 50L), new FriendshipEdge(30L, 10L), new FriendshipEdge(40L, 10L)));
+
+        assertThat(graph.getSuggestions(10L, 10)).containsExactly(40L, 50L);
+        assertThat(graph.getSuggestions(10L, 1)).containsExactly(40L);
+        assertThat(graph.getCommonFriends(20L, 30L)).containsExactly(40L);
+
+        graph.removeFriend(20L, 40L);
+        graph.addFriend(20L, 50L);
+        graph.removeUser(40L);
+        assertThat(graph.getSuggestions(10L, 10)).containsExactly(50L);
+        assertThat(graph.getCommonFriends(20L, 30L)).containsExactly(50L);
+        assertThat(graph.getFriends(30L)).containsExactly(10, 50);
+        assertThat(graph.getFriends(40L)).isEmpty();
+    }
+
+    @Test
+    public void testRolledBackFriendDoesNotReachFriendGraph() {
+        userStorage.addFriend(1L, 2L);
+        userStorage.addFriends(List.of(new FriendshipEdge(2L, 3L)));
+
+        TestTransaction.end();
+
+        assertThat(friendGraph.getFriends(1L)).isEmpty();
+        assertThat(friendGraph.getFriends(2L)).isEmpty();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testGetRecommendations() {
+        assertThat(cachedFilmStorage.getRecommendations(1L, 10)).isEmpty();
+
+        filmStorage.saveLike(1L, 2L);
+        assertThat(cachedFilmStorage.getRecommendations(1L, 10)).extracting(Film::getId).containsExactly(2L);
+
+        filmStorage.saveLike(2L, 1L);
+        assertThat(cachedFilmStorage.getRecommendations(1L, 10)).isEmpty();
+
+        filmStorage.removeLike(2L, 1L);
+        filmStorage.delete(2L);
+        assertThat(cachedFilmStorage.getRecommendations(1L, 10)).isEmpty();
+    }
+
+    @Test
+    public void testLikeMatrixRanksFilmsBySimilarUsers() {
+        LikeMatrix matrix = new LikeMatrix(jdbc, 2, 5000);
+        int[] films = {1, 2, 1, 2, 3, 4, 1, 5, 6, 2, 7, 7};
+        int[] users = {10, 10, 20, 20, 20, 20, 30, 30, 30, 40, 40, 40};
+        matrix.load(films, users, films.length);
+
+        assertThat(matrix.recommend(10L, 10)).containsExactly(3L, 4L, 7L);
+        assertThat(matrix.recommend(10L, 2)).containsExactly(3L, 4L);
+        assertThat(matrix.recommend(99L, 10)).isEmpty();
+
+        matrix.like(3L, 10L);
+        matrix.unlike(1L, 30L);
+        matrix.removeFilm(4L);
+        assertThat(matrix.recommend(10L, 10)).containsExactly(7L);
+    }
+
+    @Test
+    public void testFriendGraphIntersectsListsOfDifferentSizes() {
+        int[] celebrityFriends = IntStream.rangeClosed(1, 10_000).map(i -> i * 2).toArray();
+
+        assertThat(SortedIntArrays.intersect(new int[]{1, 4, 5, 9_998, 20_000, 20_002}, celebrityFriends))
+                .containsExactly(4, 9_998, 20_000);
+        assertThat(SortedIntArrays.intersect(celebrityFriends, new int[]{3, 7})).isEmpty();
+        assertThat(SortedIntArrays.intersect(new int[]{2, 3, 6, 8}, new int[]{1, 2, 6, 7, 8})).containsExactly(2, 6, 8);
+        assertThat(SortedIntArrays.intersect(new int[0], celebrityFriends)).isEmpty();
+    }
+
     @Test
     public void testCreateFilm() {
         Optional<Film> newFilm = Optional.ofNullable(
@@ -207,7 +377,7 @@ class FilmorateApplicationTests {
 
     @Test
     public void testFindMBAById() {
-        Optional<MPA> mpaOptional = filmStorage.findMPAById(1L);
+        Optional<MPA> mpaOptional = mpaStorage.findById(1L);
 
         assertThat(mpaOptional)
                 .isPresent()
@@ -218,7 +388,7 @@ class FilmorateApplicationTests {
 
     @Test
     public void testFindGenreById() {
-        Optional<Genre> mpaOptional = filmStorage.findGenreById(1L);
+        Optional<Genre> mpaOptional = genreStorage.findById(1L);
 
         assertThat(mpaOptional)
                 .isPresent()
@@ -234,6 +404,55 @@ class FilmorateApplicationTests {
         assertThat(films).hasSize(3);
     }
 
+    @Test
+    public void testFindAllFilmsLoadsLikes() {
+        filmStorage.likeAFilm(1L, 2L);
+
+        List<Film> films = filmStorage.findAll();
+
+        assertThat(films)
+                .filteredOn(film -> film.getId() == 1L)
+                .singleElement()
+                .satisfies(film -> assertThat(film.getLikes()).containsOnly(1L, 2L));
+    }
+
+    @Test
+    public void testFindAllFilmsLoadsMpaAndGenres() {
+        jdbc.update("UPDATE films SET mpa_id = 1 WHERE id = 2");
+        jdbc.update("INSERT INTO film_genres (film_id, genre_id) VALUES (2, 2)");
+
+        assertThat(filmStorage.findAll())
+                .filteredOn(film -> film.getId() == 2L)
+                .singleElement()
+                .satisfies(film -> {
+                    assertThat(film.getMpa()).isEqualTo(new MPA(1L, "G"));
+                    assertThat(film.getGenres()).containsExactly(new Genre(2L, "Драма"));
+                });
+    }
+
+    @Test
+    public void testFindFilmsPage() {
+        filmStorage.likeAFilm(3L, 1L);
+
+        List<Film> films = filmStorage.findPage(1L, 5);
+
+        assertThat(films)
+                .extracting(Film::getId)
+                .containsExactly(2L, 3L);
+        assertThat(films.getLast().getLikes()).containsOnly(1L, 3L);
+    }
+
+    @Test
+    public void testStreamAllFilms() {
+        List<Film> films = new ArrayList<>();
+        filmStorage.streamAll(films::add);
+
+        assertThat(films)
+                .extracting(Film::getId)
+                .containsExactly(1L, 2L, 3L);
+        assertThat(films.getFirst().getLikes()).containsOnly(1L);
+    }
+
     @Test
     public void testLikeAFilm() {
         Optional<Film> optionalFilm = filmStorage.likeAFilm(1L, 1L);
@@ -265,13 +484,15 @@ class FilmorateApplicationTests {
     }
 
     @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
     public void testGetTopFilms() {
         filmStorage.likeAFilm(1L, 2L);
         filmStorage.likeAFilm(1L, 3L);
 
         filmStorage.likeAFilm(3L, 1L);
 
-        List<Film> topFilms = filmStorage.getTopFilms(2);
+        List<Film> topFilms = filmStorage.getTopFilms(2, null, null);
         assertThat(filmStorage.findById(1L).get().getLikes())
                 .hasSize(3);
         assertThat(filmStorage.findById(3L).get().getLikes())
@@ -283,4 +504,388 @@ class FilmorateApplicationTests {
                 .containsExactlyInAnyOrder(filmStorage.findById(1L).get(),
                         filmStorage.findById(3L).get());
     }
+
+    @Test
+    public void testRolledBackLikeDoesNotReachLeaderboard() {
+        filmStorage.likeAFilm(2L, 1L);
+        filmStorage.applyLikes(List.of(new LikeEvent(3L, 1L, LikeOperation.LIKE)));
+
+        assertThat(leaderboard.getLikes(2L)).isEqualTo(1L);
+
+        TestTransaction.end();
+
+        assertThat(leaderboard.getLikes(2L)).isEqualTo(1L);
+        assertThat(leaderboard.getLikes(3L)).isEqualTo(1L);
+        assertThat(leaderboard.getTop(3)).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    public void testRolledBackLikeDoesNotReachLikeMatrix() {
+        filmStorage.saveLike(1L, 2L);
+        filmStorage.applyLikes(List.of(new LikeEvent(3L, 2L, LikeOperation.LIKE)));
+
+        TestTransaction.end();
+
+        assertThat(likeMatrix.recommend(1L, 10)).isEmpty();
+        assertThat(likeMatrix.recommend(3L, 10)).isEmpty();
+    }
+
+    @Test
+    public void testRolledBackUpdateDoesNotReachSearchIndex() {
+        Film film = filmStorage.findById(2L).get();
+        film.setName("Star Wars");
+        filmStorage.update(film);
+
+        TestTransaction.end();
+
+        assertThat(searchIndex.search("war", EnumSet.of(FilmSearchField.TITLE), 10)).isEmpty();
+        assertThat(searchIndex.search("movie", EnumSet.of(FilmSearchField.TITLE), 10)).contains(2L);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testLeaderboardMatchesSqlRanking() {
+        filmStorage.likeAFilm(2L, 1L);
+        filmStorage.likeAFilm(2L, 3L);
+        filmStorage.likeAFilm(3L, 1L);
+        filmStorage.unlikeAFilm(2L, 3L);
+        filmStorage.unlikeAFilm(1L, 1L);
+
+        assertThat(leaderboard.getTop(4))
+                .containsExactlyElementsOf(jdbc.queryForList(TOP_FILMS_SQL, Long.class, 4))
+                .containsExactly(2L, 3L, 1L);
+
+        filmStorage.delete(3L);
+
+        assertThat(leaderboard.getTop(4))
+                .containsExactlyElementsOf(jdbc.queryForList(TOP_FILMS_SQL, Long.class, 4));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testGetTopFilmsByGenreAndYear() {
+        Long comedy = jdbc.queryForObject("SELECT id FROM genres WHERE name = 'Комедия'", Long.class);
+        jdbc.update("INSERT INTO film_genres (film_id, genre_id) VALUES (1, ?), (3, ?)", comedy, comedy);
+        leaderboard.rebuild();
+        filmStorage.likeAFilm(3L, 1L);
+
+        assertThat(leaderboard.getTop(10, comedy, null)).containsExactly(3L, 1L);
+        assertThat(leaderboard.getTop(10, null, 2021)).containsExactly(3L);
+        assertThat(leaderboard.getTop(10, comedy, 2016)).containsExactly(1L);
+        assertThat(leaderboard.getTop(10, comedy, 2017)).isEmpty();
+
+        Film film = filmStorage.findById(1L).get();
+        film.setReleaseDate(LocalDate.of(2021, 1, 1));
+        filmStorage.update(film);
+
+        assertThat(leaderboard.getTop(10, null, 2016)).isEmpty();
+        assertThat(leaderboard.getTop(10, comedy, 2021)).containsExactly(3L, 1L);
+        assertThat(filmStorage.getTopFilms(1, comedy, 2021))
+                .extracting(Film::getId)
+                .containsExactly(3L);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testSearchFilms() {
+        Film film = filmStorage.findById(2L).get();
+        film.setName("Звёздные войны");
+        film.setDescription("Эпизод IV. Новая надежда");
+        filmStorage.update(film);
+        film = filmStorage.findById(3L).get();
+        film.setName("Star Wars");
+        filmStorage.update(film);
+
+        assertThat(filmStorage.search("звездная война", EnumSet.of(FilmSearchField.TITLE), 10))
+                .extracting(Film::getId)
+                .containsExactly(2L);
+        assertThat(filmStorage.search("надежды", EnumSet.of(FilmSearchField.TITLE), 10)).isEmpty();
+        assertThat(filmStorage.search("НАДЕЖДЫ", EnumSet.allOf(FilmSearchField.class), 10))
+                .extracting(Film::getId)
+                .containsExactly(2L);
+        assertThat(filmStorage.search("war", EnumSet.of(FilmSearchField.TITLE), 10))
+                .extracting(Film::getId)
+                .containsExactly(3L);
+        assertThat(filmStorage.search("movie", EnumSet.of(FilmSearchField.TITLE), 10))
+                .extracting(Film::getId)
+                .containsExactly(1L);
+
+        filmStorage.delete(2L);
+
+        assertThat(filmStorage.search("звездная война", EnumSet.of(FilmSearchField.TITLE), 10)).isEmpty();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testSearchRanksByRelevanceAndLikes() {
+        filmStorage.likeAFilm(2L, 1L);
+        filmStorage.likeAFilm(2L, 3L);
+
+        assertThat(searchIndex.search("movies", EnumSet.of(FilmSearchField.TITLE), 10))
+                .containsExactly(2L, 1L, 3L);
+        assertThat(searchIndex.search("movie 3", EnumSet.of(FilmSearchField.TITLE), 10))
+                .containsExactly(3L, 2L, 1L);
+        assertThat(searchIndex.search("movie 3", EnumSet.of(FilmSearchField.TITLE), 1))
+                .containsExactly(3L);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testLeaderboardRebuildMatchesIncrementalState() {
+        filmStorage.likeAFilm(1L, 2L);
+        filmStorage.likeAFilm(3L, 1L);
+        filmStorage.likeAFilm(3L, 2L);
+        List<Long> incremental = leaderboard.getTop(3);
+
+        leaderboard.rebuild();
+
+        assertThat(leaderboard.getTop(3))
+                .containsExactlyElementsOf(incremental)
+                .containsExactly(3L, 1L, 2L);
+        assertThat(leaderboard.getLikes(3L)).isEqualTo(3L);
+    }
+
+    @Test
+    public void testLikeCountFollowsLikes() {
+        filmStorage.likeAFilm(2L, 1L);
+        filmStorage.likeAFilm(2L, 3L);
+        filmStorage.unlikeAFilm(2L, 2L);
+
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 2L)).isEqualTo(2);
+
+        userStorage.delete(1L);
+
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 2L)).isEqualTo(1);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 1L)).isZero();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testUserDeletionKeepsOtherLeaderboardDeltas() {
+        filmStorage.likeAFilm(2L, 1L);
+        leaderboard.change(3L, 5);
+        UserService userService = new UserService(cachedUserStorage,
+                event -> leaderboard.onUserDeleted((UserDeletedEvent) event), null);
+
+        userService.delete(1L);
+
+        assertThat(leaderboard.getLikes(1L)).isZero();
+        assertThat(leaderboard.getLikes(2L)).isEqualTo(1L);
+        assertThat(leaderboard.getLikes(3L)).isEqualTo(6L);
+    }
+
+    @Test
+    public void testRepairLikeCounts() {
+        assertThat(filmStorage.repairLikeCounts()).isZero();
+
+        jdbc.update("UPDATE films SET like_count = 42 WHERE id = 1");
+
+        assertThat(filmStorage.repairLikeCounts()).isEqualTo(1);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 1L)).isEqualTo(1);
+        assertThat(filmStorage.repairLikeCounts()).isZero();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testRepeatedLikeIsIgnored() {
+        filmStorage.likeAFilm(2L, 1L);
+        Optional<Film> film = filmStorage.likeAFilm(2L, 1L);
+
+        assertThat(film)
+                .hasValueSatisfying(value -> assertThat(value.getLikes()).containsOnly(1L, 2L));
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 2L)).isEqualTo(2);
+        assertThat(leaderboard.getLikes(2L)).isEqualTo(2L);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testApplyLikesInBatch() {
+        boolean[] changed = filmStorage.applyLikes(List.of(
+                new LikeEvent(2L, 1L, LikeOperation.LIKE),
+                new LikeEvent(2L, 2L, LikeOperation.LIKE),
+                new LikeEvent(3L, 1L, LikeOperation.LIKE),
+                new LikeEvent(3L, 3L, LikeOperation.UNLIKE),
+                new LikeEvent(1L, 2L, LikeOperation.UNLIKE)));
+
+        assertThat(changed).containsExactly(true, false, true, true, false);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 2L)).isEqualTo(2);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 3L)).isEqualTo(1);
+        assertThat(leaderboard.getLikes(2L)).isEqualTo(2L);
+        assertThat(leaderboard.getLikes(3L)).isEqualTo(1L);
+        assertThat(filmStorage.findExistingIds(List.of(1L, 3L, 42L))).containsOnly(1L, 3L);
+    }
+
+    @Test
+    public void testLikeWriteBehindCoalescesAndFlushesWhenFull() {
+        LikeWriteBehind writeBehind = new LikeWriteBehind(cachedFilmStorage, true, 2, Duration.ofMinutes(1));
+
+        writeBehind.submit(2L, 1L, LikeOperation.LIKE);
+        writeBehind.submit(2L, 1L, LikeOperation.UNLIKE);
+        writeBehind.submit(2L, 1L, LikeOperation.LIKE);
+        writeBehind.submit(3L, 3L, LikeOperation.UNLIKE);
+
+        assertThat(writeBehind.getPendingCount()).isEqualTo(2);
+        assertThat(writeBehind.overlay(cachedFilmStorage.findById(2L).get()).getLikes()).containsOnly(1L, 2L);
+        assertThat(writeBehind.overlay(cachedFilmStorage.findById(3L).get()).getLikes()).isEmpty();
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 2L)).isEqualTo(1);
+
+        writeBehind.submit(1L, 2L, LikeOperation.LIKE);
+
+        assertThat(writeBehind.getPendingCount()).isEqualTo(1);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 2L)).isEqualTo(2);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 3L)).isZero();
+        assertThat(cachedFilmStorage.findById(2L).get().getLikes()).containsOnly(1L, 2L);
+
+        writeBehind.flush();
+
+        assertThat(writeBehind.getPendingCount()).isZero();
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 1L)).isEqualTo(2);
+    }
+
+    @Test
+    public void testFilmListsIncludePendingLikes() {
+        LikeWriteBehind writeBehind = new LikeWriteBehind(cachedFilmStorage, true, 100, Duration.ofMinutes(1));
+        FilmService filmService = new FilmService(cachedFilmStorage, null, referenceCache, writeBehind, null);
+        writeBehind.submit(2L, 1L, LikeOperation.LIKE);
+        writeBehind.submit(3L, 3L, LikeOperation.UNLIKE);
+        List<Film> streamed = new ArrayList<>();
+        filmService.streamAll(streamed::add);
+
+        for (List<Film> films : List.of(filmService.findAll(), filmService.findPage(null, null), streamed,
+                filmService.getTopFilms(3, null, null), filmService.search("movie", List.of("title"), 3))) {
+            assertThat(films)
+                    .extracting(Film::getId, film -> film.getLikes().size())
+                    .containsExactlyInAnyOrder(tuple(1L, 1), tuple(2L, 2), tuple(3L, 0));
+        }
+        assertThat(cachedFilmStorage.findById(2L).get().getLikes()).containsOnly(2L);
+    }
+
+    @Test
+    public void testLikeBatchWinsOverOlderBufferedLike() {
+        LikeWriteBehind writeBehind = new LikeWriteBehind(cachedFilmStorage, true, 100, Duration.ofMinutes(1));
+        UserService userService = new UserService(cachedUserStorage, event -> {
+        }, null);
+        FilmService filmService = new FilmService(cachedFilmStorage, userService, referenceCache, writeBehind, null);
+        writeBehind.submit(2L, 1L, LikeOperation.LIKE);
+
+        filmService.applyLikes(List.of(new LikeEvent(2L, 1L, LikeOperation.UNLIKE)));
+        writeBehind.flush();
+
+        assertThat(writeBehind.getPendingCount()).isZero();
+        assertThat(cachedFilmStorage.findById(2L).get().getLikes()).containsOnly(2L);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 2L)).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemovingMissingLikeChangesNothing() {
+        assertThat(filmStorage.removeLike(1L, 2L)).isEqualTo(1L);
+        assertThat(filmStorage.unlikeAFilm(1L, 2L).get().getLikes()).containsOnly(1L);
+        assertThat(jdbc.queryForObject(LIKE_COUNT_SQL, Integer.class, 1L)).isEqualTo(1);
+    }
+
+    @Test
+    public void testRepeatedFriendIsIgnored() {
+        userStorage.addFriend(1L, 2L);
+        User user = userStorage.addFriend(1L, 2L);
+
+        assertThat(user.getFriends()).hasSize(1);
+    }
+
+    @Test
+    public void testReferenceCache() {
+        assertThat(referenceCache.getGenres()).hasSize(6);
+        assertThat(referenceCache.getMpa()).hasSize(5);
+        assertThat(referenceCache.findMpaById(3L)).hasValue(new MPA(3L, "PG-13"));
+        assertThat(referenceCache.findGenreById(7L)).isEmpty();
+        assertThat(referenceCache.findUnknownGenres(List.of(new Genre(1L, null), new Genre(9L, null))))
+                .containsExactly(9L);
+    }
+
+    @Test
+    public void testReferenceCacheRefresh() {
+        jdbc.update("INSERT INTO genres (id, name) VALUES (7, 'Фантастика')");
+        assertThat(referenceCache.findGenreById(7L)).isEmpty();
+
+        referenceCache.refresh();
+
+        assertThat(referenceCache.findGenreById(7L)).hasValue(new Genre(7L, "Фантастика"));
+        jdbc.update("DELETE FROM genres WHERE id = 7");
+        referenceCache.refresh();
+    }
+
+    @Test
+    public void testCachedFilmStorageEvictsOnLike() {
+        long hits = cachedFilmStorage.getStats().hitCount();
+        cachedFilmStorage.findById(2L);
+        cachedFilmStorage.findById(2L);
+
+        assertThat(cachedFilmStorage.getStats().hitCount()).isEqualTo(hits + 1);
+
+        cachedFilmStorage.likeAFilm(2L, 1L);
+
+        assertThat(cachedFilmStorage.findById(2L))
+                .hasValueSatisfying(film -> assertThat(film.getLikes()).containsOnly(1L, 2L));
+    }
+
+    @Test
+    public void testCachedUserStorageEvictsOnUpdate() {
+        User user = cachedUserStorage.findById(1L).get();
+        User updated = new User(user.getId(), user.getEmail(), "updatedLogin", user.getName(), user.getBirthday());
+
+        cachedUserStorage.update(updated);
+
+        assertThat(cachedUserStorage.findById(1L))
+                .hasValueSatisfying(value -> assertThat(value.getLogin()).isEqualTo("updatedLogin"));
+    }
+
+    @Test
+    public void testFindUserByIdLoadsReferencesOnlyWhenExpanded() {
+        userStorage.addFriend(1L, 2L);
+
+        assertThat(userStorage.findById(1L))
+                .hasValueSatisfying(user -> {
+                    assertThat(user.getFriends()).isEmpty();
+                    assertThat(user.getFavorites()).isEmpty();
+                });
+        assertThat(userStorage.findById(1L, EnumSet.of(UserExpansion.FRIENDS)))
+                .hasValueSatisfying(user -> {
+                    assertThat(user.getFriends()).extracting(User::getId).containsOnly(2L);
+                    assertThat(user.getFavorites()).isEmpty();
+                });
+        assertThat(userStorage.findById(1L, EnumSet.of(UserExpansion.FAVORITES)))
+                .hasValueSatisfying(user -> assertThat(user.getFavorites()).extracting(Film::getId).containsOnly(1L));
+    }
+
+    @Test
+    public void testUserExistsById() {
+        assertThat(userStorage.existsById(1L)).isTrue();
+        assertThat(userStorage.existsById(42L)).isFalse();
+    }
+
+    @Test
+    public void testStorageQueriesAreTimedByQueryName() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        filmStorage.setMeterRegistry(registry);
+        try {
+            filmStorage.findById(1L);
+            filmStorage.findById(42L);
+        } finally {
+            filmStorage.setMeterRegistry(Metrics.globalRegistry);
+        }
+
+        assertThat(registry.get("filmorate.db.query")
+                .tags("storage", "FilmDbStorage", "query", "findById", "operation", "findOne")
+                .timer().count()).isEqualTo(2);
+        assertThat(registry.get("filmorate.db.rows")
+                .tags("storage", "FilmDbStorage", "query", "findById")
+                .summary().totalAmount()).isEqualTo(1);
+    }
 }
@@ -0,0 +1,315 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.ClassUtils;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.film.CachedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.CachedUserStorage;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@Transactional
+@Import(StatementCountTests.StatementCounterConfig.class)
+class StatementCountTests {
+    private static final AtomicInteger STATEMENTS = new AtomicInteger();
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private CachedFilmStorage cachedFilmStorage;
+    @Autowired
+    private CachedUserStorage cachedUserStorage;
+
+    @BeforeEach
+    public void resetInMemoryState() {
+        cachedFilmStorage.evictAll();
+        cachedUserStorage.evictAll();
+    }
+
+    @Test
+    public void testGetFilm() throws Exception {
+        assertThat(countStatements(get("/films/1"))).isEqualTo(2);
+        assertThat(countStatements(get("/films/1"))).isZero();
+    }
+
+    @Test
+    public void testGetPopularFilms() throws Exception {
+        assertThat(countStatements(get("/films/popular?count=3"))).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetPopularFilmsByYear() throws Exception {
+        assertThat(countStatements(get("/films/popular?count=3&year=2021"))).isEqualTo(2);
+    }
+
+    @Test
+    public void testSearchFilms() throws Exception {
+        assertThat(countStatements(get("/films/search?query=movie&by=title,description"))).isEqualTo(2);
+        mockMvc.perform(get("/films/search?query=movie&by=rating"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testLikeAndUnlikeFilm() throws Exception {
+        assertThat(countStatements(put("/films/2/like/1"))).isEqualTo(6);
+        assertThat(countStatements(delete("/films/2/like/1"))).isEqualTo(6);
+    }
+
+    @Test
+    public void testCompactLikeAndUnlikeFilm() throws Exception {
+        assertThat(countStatements(put("/films/2/like/1?compact=true"))).isEqualTo(4);
+        mockMvc.perform(delete("/films/2/like/1?compact=true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.filmId").value(2))
+                .andExpect(jsonPath("$.likes").value(1));
+    }
+
+    @Test
+    public void testUnlikeWithoutLikeSucceeds() throws Exception {
+        mockMvc.perform(delete("/films/1/like/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likes.length()").value(1));
+        mockMvc.perform(delete("/films/1/like/2?compact=true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likes").value(1));
+    }
+
+    @Test
+    public void testGetUser() throws Exception {
+        assertThat(countStatements(get("/users/1"))).isEqualTo(1);
+        assertThat(countStatements(get("/users/1?expand=friends,favorites"))).isEqualTo(3);
+    }
+
+    @Test
+    public void testAddAndDeleteFriend() throws Exception {
+        assertThat(countStatements(put("/users/1/friends/2"))).isEqualTo(5);
+        assertThat(countStatements(delete("/users/1/friends/2"))).isEqualTo(5);
+    }
+
+    @Test
+    public void testCompactAddAndDeleteFriend() throws Exception {
+        STATEMENTS.set(0);
+        mockMvc.perform(put("/users/1/friends/2?compact=true"))
+                .andExpect(status().isNoContent());
+        assertThat(STATEMENTS.get()).isEqualTo(2);
+        mockMvc.perform(delete("/users/1/friends/2?compact=true"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DirtiesContext
+    public void testGetFriends() throws Exception {
+        mockMvc.perform(put("/users/1/friends/3?compact=true"));
+        mockMvc.perform(put("/users/2/friends/3?compact=true"));
+        mockMvc.perform(put("/users/3/friends/2?compact=true"));
+
+        assertThat(countStatements(get("/users/1/friends"))).isEqualTo(2);
+        assertThat(countStatements(get("/users/1/friends/common/2"))).isEqualTo(2);
+        assertThat(countStatements(get("/users/1/friends/suggestions"))).isEqualTo(2);
+        mockMvc.perform(get("/users/1/friends/suggestions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(2));
+    }
+
+    @Test
+    public void testCreateFilmBatch() throws Exception {
+        assertThat(countStatements(post("/films/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(filmsJson(3)))).isEqualTo(2);
+        assertThat(countStatements(post("/films/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(filmsJson(FilmService.BATCH_CHUNK_SIZE * 2 + 1)))).isEqualTo(6);
+        mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + filmJson(0) + ",{\"name\":\"\",\"duration\":90}," +
+                                "{\"name\":\"Film\",\"duration\":90,\"mpa\":{\"id\":42}}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").isNumber())
+                .andExpect(jsonPath("$[1].error").value("name Название фильма не может быть пустым"))
+                .andExpect(jsonPath("$[2].error").value("Рейтинг с id = 42 не найден."));
+    }
+
+    @Test
+    public void testImportFilmBatchFromNdjson() throws Exception {
+        mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(IntStream.range(0, 3)
+                                .mapToObj(StatementCountTests::filmJson)
+                                .collect(Collectors.joining("\n"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[2].id").isNumber());
+    }
+
+    @Test
+    public void testImportFilmBatchFromNdjsonReportsBadLines() throws Exception {
+        String lines = String.join("\n", filmJson(0), "{\"name\":", "",
+                "{\"name\":\"Old\",\"releaseDate\":\"1800-01-01\",\"duration\":90}",
+                "{\"name\":\"\",\"duration\":90}", filmJson(1));
+        mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(lines))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[0].id").isNumber())
+                .andExpect(jsonPath("$[1].error").value(startsWith("Некорректный JSON")))
+                .andExpect(jsonPath("$[2].error").value("Дата релиза не может быть раньше 28 декабря 1895 года."))
+                .andExpect(jsonPath("$[3].error").value("name Название фильма не может быть пустым"))
+                .andExpect(jsonPath("$[4].index").value(4))
+                .andExpect(jsonPath("$[4].id").isNumber());
+    }
+
+    @Test
+    public void testCreateUserBatch() throws Exception {
+        String users = "[{\"email\":\"a@mail.ru\",\"login\":\"a\"},{\"email\":\"b\",\"login\":\"b\"}," +
+                "{\"email\":\"c@mail.ru\",\"login\":\"c\",\"birthday\":\"2000-01-01\"}]";
+        STATEMENTS.set(0);
+        mockMvc.perform(post("/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(users))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").isNumber())
+                .andExpect(jsonPath("$[1].error").value("email Некорректный формат электронной почты"))
+                .andExpect(jsonPath("$[2].id").isNumber());
+        assertThat(STATEMENTS.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAddAndDeleteFriendBatch() throws Exception {
+        String edges = "[{\"userId\":1,\"friendId\":2},{\"userId\":1,\"friendId\":3}," +
+                "{\"userId\":1,\"friendId\":42}]";
+        STATEMENTS.set(0);
+        mockMvc.perform(put("/users/friends/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(edges))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].error").doesNotExist())
+                .andExpect(jsonPath("$[1].error").doesNotExist())
+                .andExpect(jsonPath("$[2].error").value("Пользователь с id = 42 не найден."));
+        assertThat(STATEMENTS.get()).isEqualTo(2);
+        mockMvc.perform(get("/users/1/friends"))
+                .andExpect(jsonPath("$.length()").value(2));
+
+        assertThat(countStatements(delete("/users/friends/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(edges))).isEqualTo(2);
+        mockMvc.perform(get("/users/1/friends"))
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    public void testApplyLikeBatch() throws Exception {
+        String events = "[{\"filmId\":2,\"userId\":1,\"op\":\"LIKE\"},{\"filmId\":2,\"userId\":1,\"op\":\"UNLIKE\"}," +
+                "{\"filmId\":2,\"userId\":1,\"op\":\"LIKE\"},{\"filmId\":3,\"userId\":3,\"op\":\"UNLIKE\"}," +
+                "{\"filmId\":42,\"userId\":1,\"op\":\"LIKE\"}]";
+        STATEMENTS.set(0);
+        mockMvc.perform(post("/films/likes/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(events))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.duplicates").value(2))
+                .andExpect(jsonPath("$.liked").value(1))
+                .andExpect(jsonPath("$.unliked").value(1))
+                .andExpect(jsonPath("$.errors[0].index").value(4));
+        assertThat(STATEMENTS.get()).isEqualTo(5);
+    }
+
+    private static String filmsJson(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(StatementCountTests::filmJson)
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private static String filmJson(int i) {
+        return "{\"name\":\"Film " + i + "\",\"releaseDate\":\"2000-01-01\",\"duration\":90," +
+                "\"mpa\":{\"id\":1},\"genres\":[{\"id\":" + (1 + i % 6) + "}]}";
+    }
+
+    private int countStatements(RequestBuilder request) throws Exception {
+        STATEMENTS.set(0);
+        mockMvc.perform(request).andExpect(status().isOk());
+        return STATEMENTS.get();
+    }
+
+    @TestConfiguration
+    static class StatementCounterConfig {
+        private static final Set<String> STATEMENT_FACTORIES = Set.of("prepareStatement", "prepareCall",
+                "createStatement");
+
+        @Bean
+        static BeanPostProcessor statementCountingPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource) {
+                        return proxy(dataSource, (proxy, method, args) -> {
+                            Object result = invoke(dataSource, method, args);
+                            return result instanceof Connection connection ? countingConnection(connection) : result;
+                        });
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static Connection countingConnection(Connection connection) {
+            return (Connection) proxy(connection, (proxy, method, args) -> {
+                if (STATEMENT_FACTORIES.contains(method.getName())) {
+                    STATEMENTS.incrementAndGet();
+                }
+                return invoke(connection, method, args);
+            });
+        }
+
+        private static Object proxy(Object target, InvocationHandler handler) {
+            return Proxy.newProxyInstance(target.getClass().getClassLoader(),
+                    ClassUtils.getAllInterfaces(target), handler);
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args)
+                throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}